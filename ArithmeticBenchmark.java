@@ -0,0 +1,34 @@
+/**
+ * File: ArithmeticBenchmark.java
+ *
+ * Measures the memory allocated per loop iteration by the interpreter
+ * on arithmetic, with variables looked up by name, kept in frames
+ * (see Interpreter.useFrames) and kept unboxed (see
+ * Interpreter.useUnboxed). The loop's ints grow past the small
+ * integers Java caches, and it computes with doubles and bools, so
+ * boxing shows up as allocation.
+ *
+ * Usage: java ArithmeticBenchmark [iterations]
+ */
+
+public class ArithmeticBenchmark {
+
+  private static final String PROGRAM =
+    "var i := 0\n" +
+    "var sum := 0\n" +
+    "var x := 0.0\n" +
+    "var even := true\n" +
+    "while i < ITERATIONS do\n" +
+    "  set sum := sum + (i * 3) % 1000\n" +
+    "  set x := x + 0.5\n" +
+    "  set even := not even\n" +
+    "  set i := i + 1\n" +
+    "end\n";
+
+  public static void main(String[] args) throws MyPLException {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    Benchmark.report(n -> PROGRAM.replace("ITERATIONS", Integer.toString(n)),
+                     iterations / 10, iterations, iterations, "iteration",
+                     Benchmark.Mode.BY_NAME, Benchmark.Mode.FRAMES, Benchmark.Mode.UNBOXED);
+  }
+}
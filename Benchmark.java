@@ -0,0 +1,78 @@
+/**
+ * File: Benchmark.java
+ *
+ * The measurement shared by the allocation benchmarks
+ * (ArithmeticBenchmark, CallBenchmark, ObjectBenchmark): a program of
+ * a given size is parsed and type checked, and then run by an
+ * interpreter set up for each mode in turn, once at a warm-up size and
+ * once at full size. What is reported is the memory the interpreter
+ * allocated during the full run, per unit of work (iteration, call,
+ * node, ...).
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntFunction;
+
+public final class Benchmark {
+
+  /**
+   * How the interpreter keeps variables: by name, in frames of slots
+   * (see Interpreter.useFrames), or in frames with primitives unboxed
+   * (see Interpreter.useUnboxed).
+   */
+  public enum Mode {
+    BY_NAME("by name"), FRAMES("frames"), UNBOXED("unboxed");
+
+    final String label;
+
+    Mode(String label) {
+      this.label = label;
+    }
+
+    // sets up the interpreter to run the given checked program
+    void setUp(Interpreter interpreter, StmtList program) throws MyPLException {
+      if (this == BY_NAME)
+        return;
+      Resolver resolver = new Resolver();
+      program.accept(resolver);
+      interpreter.useFrames(resolver);
+      interpreter.useUnboxed(this == UNBOXED);
+    }
+  }
+
+  private Benchmark() {
+  }
+
+  /**
+   * For each mode, runs the source program.apply(warmUp), then the
+   * source program.apply(size), and prints the bytes the second run
+   * allocated per unit, of which it does the given number.
+   */
+  public static void report(IntFunction<String> program, int warmUp, int size,
+                            long units, String unit, Mode... modes) throws MyPLException {
+    for (Mode mode : modes) {
+      run(program.apply(warmUp), mode);
+      long bytes = run(program.apply(size), mode);
+      System.out.printf("%-8s %8.1f bytes/%s%n", mode.label, (double)bytes / units, unit);
+    }
+  }
+
+  // runs the given program in the given mode, returning the bytes
+  // allocated by the interpreter
+  private static long run(String source, Mode mode) throws MyPLException {
+    StmtList program = new Parser(new FastLexer(source.toCharArray())).parse();
+    TypeChecker typeChecker = new TypeChecker();
+    program.accept(typeChecker);
+    Interpreter interpreter = new Interpreter();
+    mode.setUp(interpreter, program);
+    long start = allocatedBytes();
+    interpreter.run(program);
+    return allocatedBytes() - start;
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,16 @@
+
+public class BinaryExpr implements ExprTerm {
+
+  public ExprTerm lhs = null;
+  public Token operator = null;
+  public ExprTerm rhs = null;
+  public BinaryExpr parent = null; // set when this node is its parent's lhs
+  public Type type = null;         // set by the type checker
+  public Type operandType = null;  // the operator's (non-nil) operand type
+  public Operation operation = null; // the operator specialized by type
+
+  public void accept(Visitor visitor) throws MyPLException {
+    visitor.visit(this);
+  }
+
+}
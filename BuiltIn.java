@@ -0,0 +1,31 @@
+/**
+ * File: BuiltIn.java
+ *
+ * The built-in functions. A call to one is bound to it by name (see
+ * CallRValue.builtIn) the first time the call runs.
+ */
+
+public enum BuiltIn {
+
+  PRINT, READ, LENGTH, GET, CONCAT, APPEND, ITOS, STOI, DTOS, STOD;
+
+  /**
+   * The built-in function with the given name, or null if there is
+   * none.
+   */
+  public static BuiltIn of(String name) {
+    switch (name) {
+    case "print": return PRINT;
+    case "read": return READ;
+    case "length": return LENGTH;
+    case "get": return GET;
+    case "concat": return CONCAT;
+    case "append": return APPEND;
+    case "itos": return ITOS;
+    case "stoi": return STOI;
+    case "dtos": return DTOS;
+    case "stod": return STOD;
+    default: return null;
+    }
+  }
+}
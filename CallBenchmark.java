@@ -0,0 +1,35 @@
+/**
+ * File: CallBenchmark.java
+ *
+ * Measures the memory allocated per user function call by the
+ * interpreter, with variables looked up by name and kept in frames
+ * (see Interpreter.useFrames). The program calls a recursive function
+ * without a return value, whose arguments are small (cached) integers,
+ * so what is allocated is the calling convention's own overhead.
+ *
+ * Usage: java CallBenchmark [rounds]
+ */
+
+public class CallBenchmark {
+
+  private static final int DEPTH = 100;
+
+  private static final String PROGRAM =
+    "fun nil down(int n)\n" +
+    "  if n > 0 then\n" +
+    "    down(n - 1)\n" +
+    "  end\n" +
+    "end\n" +
+    "var i := 0\n" +
+    "while i < ROUNDS do\n" +
+    "  down(" + DEPTH + ")\n" +
+    "  set i := i + 1\n" +
+    "end\n";
+
+  public static void main(String[] args) throws MyPLException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    Benchmark.report(n -> PROGRAM.replace("ROUNDS", Integer.toString(n)),
+                     rounds / 10, rounds, (long)rounds * (DEPTH + 1), "call",
+                     Benchmark.Mode.BY_NAME, Benchmark.Mode.FRAMES);
+  }
+}
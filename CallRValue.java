@@ -5,6 +5,9 @@ public class CallRValue implements RValue {
 
   public Token funName = null;
   public ArrayList<Expr> argList = new ArrayList<>();
+  public FunctionType type = null; // set by the type checker
+  public BuiltIn builtIn = null;    // the function called, bound by
+  public FunDeclStmt target = null; // the interpreter on the first call
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
@@ -0,0 +1,529 @@
+/**
+ * File: ClosureCompiler.java
+ *
+ * A second execution engine, alongside Interpreter. The checked and
+ * resolved (see Resolver) program is compiled once into a tree of
+ * closures: each statement becomes an Exec and each expression an
+ * Eval, which run their children directly and return their result,
+ * with the variables in frames of slots as in Interpreter.useFrames.
+ * Operators are compiled by their operation (see Operation), so
+ * dispatching on the operator happens once, when compiling (programs
+ * loaded from the cache keep their operations, see FlatAST); operators
+ * without one get the interpreter's general operators.
+ *
+ * A function body is compiled on its first call, after it is parsed,
+ * checked and resolved if it was left unparsed (see
+ * Parser.useLazyBodies). The results and errors are the interpreter's:
+ * the operators, built-in functions and errors are shared with it.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClosureCompiler {
+
+  // an expression, evaluated in the given frame
+  interface Eval {
+    Object eval(Frame f) throws MyPLException;
+  }
+
+  // a statement, run in the given frame; returns true if a return
+  // statement ran (with its value in returnValue)
+  interface Exec {
+    boolean exec(Frame f) throws MyPLException;
+  }
+
+  // an operator applied to evaluated operands
+  interface Op {
+    Object apply(Object lhsVal, Object rhsVal) throws MyPLException;
+  }
+
+  // a user function, whose body is compiled on its first call, with
+  // its released call frames (linked through Frame.next) for reuse
+  private static final class Function {
+    final FunDeclStmt decl;
+    Exec body = null;
+    Frame freeFrames = null;
+
+    Function(FunDeclStmt decl) {
+      this.decl = decl;
+    }
+  }
+
+  // binary expression chains longer than this run as a loop instead of
+  // nested closures, so they don't recurse once per operator
+  private static final int MAX_NESTED_CHAIN = 16;
+
+  private static final Exec NOTHING = f -> false;
+
+  private final TypeChecker typeChecker; // checks lazily parsed bodies
+  private final Resolver resolver;
+  private final Map<String,Function> functions = new HashMap<>();
+  // the declaration a type name stands for where it is used: a cell, as
+  // declaring a type again under the same name rebinds it
+  private final Map<String,TypeDeclStmt[]> types = new HashMap<>();
+  // the compiled field initializers of each type (null for literals)
+  private final Map<TypeDeclStmt,Eval[]> initializers = new HashMap<>();
+  private Frame globals = null;      // the program's frame
+  private Object returnValue = null; // set by a return statement
+
+  /**
+   * Compiles programs resolved by the given resolver. The type checker
+   * (which may be null for a program that wasn't checked) must be the
+   * one that checked the program.
+   */
+  public ClosureCompiler(TypeChecker typeChecker, Resolver resolver) {
+    this.typeChecker = typeChecker;
+    this.resolver = resolver;
+  }
+
+  /**
+   * Compiles and runs the given program, returning its exit code.
+   */
+  public Integer run(StmtList program) throws MyPLException {
+    // calls are bound to their functions when compiled
+    for (Stmt s : program.stmts)
+      if (s instanceof FunDeclStmt)
+        functions.put(((FunDeclStmt)s).funName.lexeme(), new Function((FunDeclStmt)s));
+    Exec[] stmts = compile(program.stmts);
+    globals = new Frame(null, program.frameSize);
+    if (!run(stmts, globals) || returnValue == null)
+      return 0;
+    return (Integer)returnValue;
+  }
+
+  //------------------------
+  // statements
+  //------------------------
+
+  private Exec[] compile(List<Stmt> stmts) throws MyPLException {
+    Exec[] compiled = new Exec[stmts.size()];
+    for (int i = 0; i < compiled.length; ++i)
+      compiled[i] = stmt(stmts.get(i));
+    return compiled;
+  }
+
+  private static boolean run(Exec[] stmts, Frame f) throws MyPLException {
+    for (Exec s : stmts)
+      if (s.exec(f))
+        return true;
+    return false;
+  }
+
+  // a block, in a frame of its own if it declares variables: as in
+  // Interpreter, the frame last released from the enclosing frame
+  // (its spare) if it is big enough, so running a block in a loop
+  // allocates nothing
+  private Exec block(StmtList node) throws MyPLException {
+    Exec[] stmts = compile(node.stmts);
+    int size = node.frameSize;
+    if (size > 0)
+      return f -> {
+        Frame child = f.spare;
+        if (child != null && child.slots.length >= size)
+          f.spare = null;
+        else
+          child = new Frame(f, size);
+        boolean returned = run(stmts, child);
+        f.spare = child;
+        return returned;
+      };
+    if (stmts.length == 1)
+      return stmts[0];
+    return f -> run(stmts, f);
+  }
+
+  private Exec stmt(Stmt node) throws MyPLException {
+    if (node instanceof VarDeclStmt)
+      return varDecl((VarDeclStmt)node);
+    if (node instanceof AssignStmt)
+      return assign((AssignStmt)node);
+    if (node instanceof ReturnStmt) {
+      // a return without a value returns nil
+      Expr returnExpr = ((ReturnStmt)node).returnExpr;
+      Eval value = returnExpr != null ? expr(returnExpr) : f -> null;
+      return f -> {
+        returnValue = value.eval(f);
+        return true;
+      };
+    }
+    if (node instanceof IfStmt)
+      return ifStmt((IfStmt)node);
+    if (node instanceof WhileStmt) {
+      Eval condition = expr(((WhileStmt)node).boolExpr);
+      Exec body = block(((WhileStmt)node).stmtList);
+      return f -> {
+        while ((Boolean)condition.eval(f))
+          if (body.exec(f))
+            return true;
+        return false;
+      };
+    }
+    if (node instanceof ForStmt)
+      return forStmt((ForStmt)node);
+    if (node instanceof TypeDeclStmt) {
+      TypeDeclStmt decl = (TypeDeclStmt)node;
+      TypeDeclStmt[] cell = typeCell(decl.typeId.lexeme());
+      return f -> {
+        cell[0] = decl;
+        return false;
+      };
+    }
+    if (node instanceof FunDeclStmt)
+      return NOTHING;
+    // an expression (call) statement
+    Eval value = expr((Expr)node);
+    return f -> {
+      value.eval(f);
+      return false;
+    };
+  }
+
+  private Exec varDecl(VarDeclStmt node) throws MyPLException {
+    Eval value = expr(node.varExpr);
+    int slot = node.slot;
+    return f -> {
+      f.slots[slot] = value.eval(f);
+      return false;
+    };
+  }
+
+  private Exec assign(AssignStmt node) throws MyPLException {
+    Eval value = expr(node.rhs);
+    LValue lhs = node.lhs;
+    int depth = lhs.depth;
+    int slot = lhs.slot;
+    if (lhs.path.size() == 1) {
+      if (depth == 0)
+        return f -> {
+          f.slots[slot] = value.eval(f);
+          return false;
+        };
+      return f -> {
+        Object v = value.eval(f);
+        frameAt(f, depth).slots[slot] = v;
+        return false;
+      };
+    }
+    FieldCache cache = new FieldCache(lhs.path);
+    int last = lhs.path.size() - 1;
+    return f -> {
+      Object v = value.eval(f);
+      MyPLObject obj = (MyPLObject)frameAt(f, depth).slots[slot];
+      for (int i = 1; i < last; ++i)
+        obj = (MyPLObject)cache.get(obj, i);
+      cache.set(obj, last, v);
+      return false;
+    };
+  }
+
+  private Exec ifStmt(IfStmt node) throws MyPLException {
+    // the if part and the elifs, in order, then the else part
+    int count = 1 + node.elsifs.size();
+    Eval[] conditions = new Eval[count];
+    Exec[] bodies = new Exec[count];
+    conditions[0] = expr(node.ifPart.boolExpr);
+    bodies[0] = block(node.ifPart.stmtList);
+    for (int i = 1; i < count; ++i) {
+      conditions[i] = expr(node.elsifs.get(i - 1).boolExpr);
+      bodies[i] = block(node.elsifs.get(i - 1).stmtList);
+    }
+    Exec otherwise = node.hasElse ? block(node.elseStmtList) : NOTHING;
+    if (count == 1) {
+      Eval condition = conditions[0];
+      Exec body = bodies[0];
+      return f -> (Boolean)condition.eval(f) ? body.exec(f) : otherwise.exec(f);
+    }
+    return f -> {
+      for (int i = 0; i < count; ++i)
+        if ((Boolean)conditions[i].eval(f))
+          return bodies[i].exec(f);
+      return otherwise.exec(f);
+    };
+  }
+
+  private Exec forStmt(ForStmt node) throws MyPLException {
+    Eval start = expr(node.startExpr);
+    Eval end = expr(node.endExpr);
+    Exec body = block(node.stmtList);
+    int slot = node.slot;
+    // the loop variable is in the frame of the enclosing block
+    return f -> {
+      int begin = (Integer)start.eval(f);
+      int last = (Integer)end.eval(f);
+      if (begin > last) {
+        for (int i = begin; i > last; i--) {
+          f.slots[slot] = i;
+          if (body.exec(f))
+            return true;
+        }
+      } else {
+        for (int i = begin; i <= last; i++) {
+          f.slots[slot] = i;
+          if (body.exec(f))
+            return true;
+        }
+      }
+      return false;
+    };
+  }
+
+  //------------------------
+  // expressions
+  //------------------------
+
+  private Eval expr(Expr node) throws MyPLException {
+    Eval value;
+    if (node.operator == null)
+      value = term(node.first);
+    else
+      value = binary(term(node.first), node.operator, node.operation, expr(node.rest));
+    if (!node.negated)
+      return value;
+    return f -> not(value.eval(f));
+  }
+
+  private Eval term(ExprTerm node) throws MyPLException {
+    if (node instanceof SimpleTerm)
+      return rvalue(((SimpleTerm)node).rvalue);
+    if (node instanceof ComplexTerm)
+      return expr(((ComplexTerm)node).expr);
+    if (node instanceof BinaryExpr)
+      return chain((BinaryExpr)node);
+    UnaryExpr unary = (UnaryExpr)node;
+    Eval operand = term(unary.operand);
+    if (unary.operator.type() == TokenType.NOT)
+      return f -> not(operand.eval(f));
+    return f -> negate(operand.eval(f));
+  }
+
+  // a left associative chain of binary expressions (its left spine)
+  private Eval chain(BinaryExpr node) throws MyPLException {
+    List<BinaryExpr> spine = new ArrayList<>();
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr)
+      bottom = (BinaryExpr)bottom.lhs;
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      spine.add(curr);
+      if (curr == node)
+        break;
+    }
+    Eval value = term(bottom.lhs);
+    if (spine.size() <= MAX_NESTED_CHAIN) {
+      for (BinaryExpr curr : spine)
+        value = binary(value, curr.operator, curr.operation, term(curr.rhs));
+      return value;
+    }
+    Eval first = value;
+    Token[] operators = new Token[spine.size()];
+    Op[] ops = new Op[spine.size()];
+    Eval[] operands = new Eval[spine.size()];
+    for (int i = 0; i < operands.length; ++i) {
+      BinaryExpr curr = spine.get(i);
+      operators[i] = curr.operator;
+      ops[i] = op(curr.operation, curr.operator);
+      operands[i] = term(curr.rhs);
+    }
+    return f -> {
+      Object lhsVal = first.eval(f);
+      for (int i = 0; i < operands.length; ++i)
+        if (!Interpreter.shortCircuits(lhsVal, operators[i]))
+          lhsVal = ops[i].apply(lhsVal, operands[i].eval(f));
+      return lhsVal;
+    };
+  }
+
+  // a binary operator applied to its operands, specialized by operation
+  private static Eval binary(Eval lhs, Token operator, Operation operation, Eval rhs) {
+    TokenType type = operator.type();
+    if (type == TokenType.AND || type == TokenType.OR) {
+      Op op = op(operation, operator);
+      return f -> {
+        Object lhsVal = lhs.eval(f);
+        if (Interpreter.shortCircuits(lhsVal, operator))
+          return lhsVal;
+        return op.apply(lhsVal, rhs.eval(f));
+      };
+    }
+    if (operation == null) {
+      return f -> Interpreter.applyOperator(lhs.eval(f), operator, rhs.eval(f));
+    }
+    switch (operation) {
+    case INT_ADD: return f -> (Integer)lhs.eval(f) + (Integer)rhs.eval(f);
+    case INT_SUB: return f -> (Integer)lhs.eval(f) - (Integer)rhs.eval(f);
+    case INT_MUL: return f -> (Integer)lhs.eval(f) * (Integer)rhs.eval(f);
+    case INT_LESS: return f -> (Integer)lhs.eval(f) < (Integer)rhs.eval(f);
+    case INT_LESS_EQUAL: return f -> (Integer)lhs.eval(f) <= (Integer)rhs.eval(f);
+    case INT_GREATER: return f -> (Integer)lhs.eval(f) > (Integer)rhs.eval(f);
+    case INT_GREATER_EQUAL: return f -> (Integer)lhs.eval(f) >= (Integer)rhs.eval(f);
+    case DOUBLE_ADD: return f -> (Double)lhs.eval(f) + (Double)rhs.eval(f);
+    case DOUBLE_SUB: return f -> (Double)lhs.eval(f) - (Double)rhs.eval(f);
+    case DOUBLE_MUL: return f -> (Double)lhs.eval(f) * (Double)rhs.eval(f);
+    case DOUBLE_LESS: return f -> (Double)lhs.eval(f) < (Double)rhs.eval(f);
+    case DOUBLE_LESS_EQUAL: return f -> (Double)lhs.eval(f) <= (Double)rhs.eval(f);
+    case DOUBLE_GREATER: return f -> (Double)lhs.eval(f) > (Double)rhs.eval(f);
+    case DOUBLE_GREATER_EQUAL: return f -> (Double)lhs.eval(f) >= (Double)rhs.eval(f);
+    case EQUAL: return f -> Interpreter.valuesEqual(lhs.eval(f), rhs.eval(f));
+    case NOT_EQUAL: return f -> !Interpreter.valuesEqual(lhs.eval(f), rhs.eval(f));
+    default:
+      // division and mod, with their errors
+      return f -> Interpreter.applyOperation(operation, lhs.eval(f), operator, rhs.eval(f));
+    }
+  }
+
+  // an operator applied to evaluated operands (without short-circuiting)
+  private static Op op(Operation operation, Token operator) {
+    if (operation == null)
+      return (lhsVal, rhsVal) -> Interpreter.applyOperator(lhsVal, operator, rhsVal);
+    return (lhsVal, rhsVal) -> Interpreter.applyOperation(operation, lhsVal, operator, rhsVal);
+  }
+
+  private static Object not(Object value) {
+    if (value instanceof Boolean)
+      return !(Boolean)value;
+    return value;
+  }
+
+  private static Object negate(Object value) {
+    if (value instanceof Integer)
+      return -(Integer)value;
+    return -(Double)value;
+  }
+
+  private Eval rvalue(RValue node) throws MyPLException {
+    if (node instanceof SimpleRValue) {
+      Object value = Interpreter.literalValue(((SimpleRValue)node).val);
+      return f -> value;
+    }
+    if (node instanceof IDRValue)
+      return variable((IDRValue)node);
+    if (node instanceof CallRValue)
+      return call((CallRValue)node);
+    if (node instanceof NegatedRValue) {
+      Eval operand = expr(((NegatedRValue)node).expr);
+      return f -> negate(operand.eval(f));
+    }
+    TypeDeclStmt[] cell = typeCell(((NewRValue)node).typeId.lexeme());
+    return f -> newObject(cell[0]);
+  }
+
+  private Eval variable(IDRValue node) {
+    int depth = node.depth;
+    int slot = node.slot;
+    if (node.path.size() == 1) {
+      if (depth == 0)
+        return f -> f.slots[slot];
+      if (depth == 1)
+        return f -> f.parent.slots[slot];
+      return f -> frameAt(f, depth).slots[slot];
+    }
+    FieldCache cache = new FieldCache(node.path);
+    int last = node.path.size() - 1;
+    return f -> {
+      MyPLObject obj = (MyPLObject)frameAt(f, depth).slots[slot];
+      for (int i = 1; i < last; ++i)
+        obj = (MyPLObject)cache.get(obj, i);
+      return cache.get(obj, last);
+    };
+  }
+
+  private Eval call(CallRValue node) throws MyPLException {
+    Eval[] args = new Eval[node.argList.size()];
+    for (int i = 0; i < args.length; ++i)
+      args[i] = expr(node.argList.get(i));
+    BuiltIn builtIn = BuiltIn.of(node.funName.lexeme());
+    if (builtIn != null) {
+      Token funName = node.funName;
+      Token[] argTokens = new Token[args.length];
+      for (int i = 0; i < args.length; ++i)
+        argTokens[i] = Interpreter.getFirstToken(node.argList.get(i));
+      return f -> {
+        Object[] argVals = new Object[args.length];
+        for (int i = 0; i < args.length; ++i) {
+          argVals[i] = args[i].eval(f);
+          if (argVals[i] == null)
+            Interpreter.error("nil value", argTokens[i]);
+        }
+        return Interpreter.callBuiltIn(builtIn, Arrays.asList(argVals), funName);
+      };
+    }
+    Function function = functions.get(node.funName.lexeme());
+    return f -> {
+      Exec body = body(function);
+      Frame callFrame = function.freeFrames;
+      if (callFrame != null)
+        function.freeFrames = callFrame.next;
+      else
+        callFrame = new Frame(globals, function.decl.frameSize);
+      for (int i = 0; i < args.length; ++i)
+        callFrame.slots[i] = args[i].eval(f);
+      Object value = null;
+      if (body.exec(callFrame)) {
+        value = returnValue;
+        returnValue = null;
+      }
+      callFrame.next = function.freeFrames;
+      function.freeFrames = callFrame;
+      return value;
+    };
+  }
+
+  // the compiled body of a function, parsing, checking and resolving it
+  // first if it was left unparsed
+  private Exec body(Function function) throws MyPLException {
+    if (function.body == null) {
+      FunDeclStmt decl = function.decl;
+      if (decl.bodyParser != null) {
+        decl.bodyParser.parseBody(decl);
+        if (typeChecker != null)
+          typeChecker.checkBody(decl);
+        resolver.resolveBody(decl);
+      }
+      // the body shares the call's frame (its frameSize is 0)
+      function.body = block(decl.stmtList);
+    }
+    return function.body;
+  }
+
+  // creates an object from its shape's template, running the field
+  // initializers that aren't literals in a frame of their own under
+  // the program's frame (where types are declared)
+  private Object newObject(TypeDeclStmt decl) throws MyPLException {
+    MyPLObject obj = new MyPLObject(Shape.of(decl));
+    if (obj.shape.allConstant)
+      return obj;
+    Eval[] inits = initializers.get(decl);
+    if (inits == null) {
+      inits = new Eval[decl.fields.size()];
+      for (int i = 0; i < inits.length; ++i)
+        if (!obj.shape.constant[i])
+          inits[i] = expr(decl.fields.get(i).varExpr);
+      initializers.put(decl, inits);
+    }
+    Frame init = new Frame(globals, decl.fields.size());
+    for (int i = 0; i < inits.length; ++i) {
+      int slot = decl.fields.get(i).slot;
+      if (inits[i] != null)
+        obj.fields[i] = inits[i].eval(init);
+      init.slots[slot] = obj.fields[i];
+    }
+    return obj;
+  }
+
+  //------------------------
+  // helper functions
+  //------------------------
+
+  private TypeDeclStmt[] typeCell(String name) {
+    return types.computeIfAbsent(name, n -> new TypeDeclStmt[1]);
+  }
+
+  private static Frame frameAt(Frame f, int depth) {
+    while (depth-- > 0)
+      f = f.parent;
+    return f;
+  }
+}
@@ -5,6 +5,9 @@ public class Expr implements Stmt {
   public ExprTerm first = null;
   public Token operator = null;
   public Expr rest = null;
+  public Type type = null;        // set by the type checker
+  public Type operandType = null; // the operator's (non-nil) operand type
+  public Operation operation = null; // the operator specialized by type
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
@@ -0,0 +1,473 @@
+/**
+ * File: FastLexer.java
+ *
+ * Buffer-based lexer for MyPL. The whole source is read (or memory
+ * mapped) once into a char array, which is then scanned with an index
+ * cursor instead of peeking through a BufferedReader with mark/reset.
+ * Lexemes are sliced directly out of the buffer. Pure ASCII sources
+ * are widened byte by byte; anything else is decoded with the default
+ * charset, exactly as InputStreamReader would.
+ *
+ * The tokens returned by nextToken (type, lexeme, row and column) are
+ * the same as the ones returned by Lexer for the same source.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+public class FastLexer implements TokenSource {
+
+  private static final int EOF = -1;
+
+  // character classes for the ASCII fast path
+  private static final byte WHITESPACE = 1;
+  private static final byte DIGIT = 2;
+  private static final byte LETTER = 4;
+  private static final byte[] ASCII_CLASS = new byte[128];
+
+  // reserved words bucketed by their first character
+  private static final String[][] RESERVED_WORDS = new String[128][];
+  private static final TokenType[][] RESERVED_TYPES = new TokenType[128][];
+
+  static {
+    for (char c = 0; c < 128; ++c) {
+      if (Character.isWhitespace(c))
+        ASCII_CLASS[c] |= WHITESPACE;
+      if (Character.isDigit(c))
+        ASCII_CLASS[c] |= DIGIT;
+      if (Character.isLetter(c))
+        ASCII_CLASS[c] |= LETTER;
+    }
+    reserve("int", TokenType.INT_TYPE);
+    reserve("double", TokenType.DOUBLE_TYPE);
+    reserve("char", TokenType.CHAR_TYPE);
+    reserve("string", TokenType.STRING_TYPE);
+    reserve("bool", TokenType.BOOL_TYPE);
+    reserve("type", TokenType.TYPE);
+    reserve("and", TokenType.AND);
+    reserve("or", TokenType.OR);
+    reserve("not", TokenType.NOT);
+    reserve("neg", TokenType.NEG);
+    reserve("while", TokenType.WHILE);
+    reserve("for", TokenType.FOR);
+    reserve("to", TokenType.TO);
+    reserve("do", TokenType.DO);
+    reserve("if", TokenType.IF);
+    reserve("then", TokenType.THEN);
+    reserve("else", TokenType.ELSE);
+    reserve("elif", TokenType.ELIF);
+    reserve("end", TokenType.END);
+    reserve("fun", TokenType.FUN);
+    reserve("var", TokenType.VAR);
+    reserve("set", TokenType.SET);
+    reserve("return", TokenType.RETURN);
+    reserve("new", TokenType.NEW);
+    reserve("nil", TokenType.NIL);
+    reserve("true", TokenType.BOOL_VAL);
+    reserve("false", TokenType.BOOL_VAL);
+  }
+
+  private final char[] buffer;  // the source text
+  private final int end;        // one past the last source character
+  private int pos;              // index of the next unread character
+  private int line;
+  private int column;
+
+  // the most recently scanned token
+  private int tokenStart;
+  private int tokenLength;
+  private int tokenLine;
+  private int tokenColumn;
+  private String tokenWord;     // shared lexeme for reserved words
+
+  /**
+   * Create a lexer over the full contents of the given stream.
+   */
+  public FastLexer(InputStream instream) throws MyPLException {
+    this(readAll(instream));
+  }
+
+  /**
+   * Create a lexer over the given file, which is memory mapped
+   * instead of being read through a stream.
+   */
+  public FastLexer(File file) throws FileNotFoundException, MyPLException {
+    this(mapAll(new FileInputStream(file)));
+  }
+
+  /**
+   * Create a lexer over an already decoded source.
+   */
+  public FastLexer(char[] source) {
+    this(source, 0, source.length, 1);
+  }
+
+  /**
+   * Create a lexer over source[start, end), where source[start] is the
+   * first character of the given line.
+   */
+  public FastLexer(char[] source, int start, int end, int line) {
+    this.buffer = source;
+    this.pos = start;
+    this.end = end;
+    this.line = line;
+    this.column = 0;
+  }
+
+  /**
+   * Returns the decoded source text scanned by this lexer.
+   */
+  public char[] source() {
+    return buffer;
+  }
+
+  public Token nextToken() throws MyPLException {
+    TokenType type = scan();
+    String lexeme = tokenWord;
+    if (lexeme == null)
+      lexeme = new String(buffer, tokenStart, tokenLength);
+    return new Token(type, lexeme, tokenLine, tokenColumn);
+  }
+
+  //------------------------
+  // scanner
+  //------------------------
+
+  /**
+   * Scans the next token and returns its type. The lexeme is left in
+   * the buffer at tokenStart() with length tokenLength().
+   */
+  TokenType scan() throws MyPLException {
+    while (true) {
+      if (peek() == EOF)
+        return found(TokenType.EOS, pos, 0, line, column);
+      char symbol = (char) read();
+      column++;
+      int secretColumn = column;
+      // skip white space (only newlines directly after a token count as lines)
+      if (isWhitespace(symbol)) {
+        while (symbol == '\n') {
+          line += 1;
+          column = 1;
+          symbol = (char) read();
+        }
+        while (isWhitespace(symbol)) {
+          symbol = (char) read();
+          column += 1;
+        }
+      }
+      int at = pos - 1; // index of symbol in the buffer
+
+      // basic symbols, comments, chars and strings
+      switch (symbol) {
+      case ',':
+        return found(TokenType.COMMA, at, 1, line, column);
+      case '.':
+        return found(TokenType.DOT, at, 1, line, column);
+      case '+':
+        return found(TokenType.PLUS, at, 1, line, column);
+      case '-':
+        return found(TokenType.MINUS, at, 1, line, column);
+      case '*':
+        return found(TokenType.MULTIPLY, at, 1, line, column);
+      case '/':
+        return found(TokenType.DIVIDE, at, 1, line, column);
+      case '%':
+        return found(TokenType.MODULO, at, 1, line, column);
+      case '=':
+        return found(TokenType.EQUAL, at, 1, line, column);
+      case '(':
+        return found(TokenType.LPAREN, at, 1, line, column);
+      case ')':
+        return found(TokenType.RPAREN, at, 1, line, column);
+      case '>':
+        if (peek() == '=') {
+          read();
+          column += 1;
+          return found(TokenType.GREATER_THAN_EQUAL, at, 2, line, column - 1);
+        }
+        return found(TokenType.GREATER_THAN, at, 1, line, column);
+      case '<':
+        if (peek() == '=') {
+          read();
+          column += 1;
+          return found(TokenType.LESS_THAN_EQUAL, at, 2, line, column - 1);
+        }
+        return found(TokenType.LESS_THAN, at, 1, line, column);
+      case '!':
+        if (peek() == '=') {
+          read();
+          column += 1;
+          return found(TokenType.NOT_EQUAL, at, 2, line, column - 1);
+        }
+        return found(TokenType.NOT, at, 1, line, column);
+      case ':':
+        if (peek() == '=') {
+          read();
+          column += 1;
+          return found(TokenType.ASSIGN, at, 2, line, column - 1);
+        }
+        break;
+      case '#':
+        while (symbol != '\n' && pos < end)
+          symbol = (char) read();
+        column = 0;
+        line++;
+        continue;
+      case '\'':
+        return charValue(at);
+      case '"':
+        return stringValue(at);
+      default:
+        break;
+      }
+
+      if (isDigit(symbol))
+        return number(at);
+
+      if (isLetter(symbol)) {
+        secretColumn = column;
+        char next = (char) peek();
+        while (isLetter(next) || isDigit(next) || next == '_') {
+          column += 1;
+          pos++;
+          next = (char) peek();
+        }
+        return word(at, pos - at, line, secretColumn);
+      }
+
+      if (isWhitespace(symbol)) {
+        symbol = (char) read();
+        column += 1;
+      }
+      if (peek() == EOF) { // an unknown trailing symbol ends the stream
+        column = 0;
+        return found(TokenType.EOS, pos, 0, line, column);
+      }
+      throw new MyPLException("Lexer", "unexpected symbol ’" + symbol + "’", line, column);
+    }
+  }
+
+  // char literals: the lexeme is the character after the opening
+  // quote, and the column is left on the opening quote
+  private TokenType charValue(int quote) throws MyPLException {
+    int secretColumn = column;
+    int length = 2; // both quotes, plus each character read after the first
+    if (pos >= end)
+      throw new MyPLException("Lexer", "not a valid char ", line, secretColumn);
+    char symbol = (char) read();
+    while (symbol != '\'') {
+      if (pos >= end)
+        throw new MyPLException("Lexer", "not a valid char ", line, secretColumn);
+      symbol = (char) read();
+      length++;
+    }
+    if (length > 3)
+      throw new MyPLException("Lexer", "not a valid char ", line, secretColumn);
+    return found(TokenType.CHAR_VAL, quote + 1, 1, line, secretColumn);
+  }
+
+  // string literals: the lexeme excludes the quotes
+  private TokenType stringValue(int quote) throws MyPLException {
+    int secretColumn = column;
+    if (peek() == '"') {
+      read();
+      column++;
+      return found(TokenType.STRING_VAL, quote + 1, 0, line, secretColumn);
+    }
+    if (pos >= end)
+      throw new MyPLException("Lexer", "found end of file within string ", line, column + 1);
+    char symbol = (char) read();
+    while (symbol != '"') {
+      column++;
+      if (pos >= end)
+        throw new MyPLException("Lexer", "found end of file within string ", line, column + 1);
+      symbol = (char) read();
+      if (symbol == '\n')
+        throw new MyPLException("Lexer", "found newline within string ", line, column + 1);
+    }
+    column++;
+    return found(TokenType.STRING_VAL, quote + 1, pos - quote - 2, line, secretColumn);
+  }
+
+  // int and double values
+  private TokenType number(int start) throws MyPLException {
+    int secretColumn = column;
+    boolean isValid = true;
+    char next = (char) peek();
+    while (!isWhitespace(next)) {
+      if (isDigit(next)) {
+        column += 1;
+        pos++;
+      } else if (next == '.') {
+        column += 1;
+        isValid = false;
+        pos++;
+        if (!isDigit((char) peek())) {
+          String msg = "missing digit in float '" + new String(buffer, start, pos - start) + "'";
+          throw new MyPLException("Lexer", msg, line, secretColumn);
+        }
+      } else if (isLetter(next)) {
+        String msg = "unexpected symbol '" + next + "'";
+        throw new MyPLException("Lexer", msg, line, column + 1);
+      } else {
+        break;
+      }
+      next = (char) peek();
+    }
+    int length = pos - start;
+    if (isValid) {
+      if (buffer[start] == '0' && length > 1) {
+        String msg = "leading zero in '" + new String(buffer, start, length) + "'";
+        throw new MyPLException("Lexer", msg, line, secretColumn);
+      }
+      return found(TokenType.INT_VAL, start, length, line, secretColumn);
+    }
+    return found(TokenType.DOUBLE_VAL, start, length, line, secretColumn);
+  }
+
+  // reserved words and identifiers
+  private TokenType word(int start, int length, int row, int col) {
+    char first = buffer[start];
+    if (first < 128 && RESERVED_WORDS[first] != null) {
+      String[] words = RESERVED_WORDS[first];
+      for (int i = 0; i < words.length; ++i) {
+        if (matches(words[i], start, length)) {
+          found(RESERVED_TYPES[first][i], start, length, row, col);
+          tokenWord = words[i];
+          return RESERVED_TYPES[first][i];
+        }
+      }
+    }
+    return found(TokenType.ID, start, length, row, col);
+  }
+
+  private boolean matches(String word, int start, int length) {
+    if (word.length() != length)
+      return false;
+    for (int i = 1; i < length; ++i)
+      if (word.charAt(i) != buffer[start + i])
+        return false;
+    return true;
+  }
+
+  private TokenType found(TokenType type, int start, int length, int row, int col) {
+    tokenStart = start;
+    tokenLength = length;
+    tokenLine = row;
+    tokenColumn = col;
+    tokenWord = null;
+    return type;
+  }
+
+  // accessors for the most recently scanned token
+  int tokenStart() {
+    return tokenStart;
+  }
+
+  int tokenLength() {
+    return tokenLength;
+  }
+
+  int tokenLine() {
+    return tokenLine;
+  }
+
+  int tokenColumn() {
+    return tokenColumn;
+  }
+
+  //------------------------
+  // helper functions
+  //------------------------
+
+  private int read() {
+    if (pos < end)
+      return buffer[pos++];
+    return EOF;
+  }
+
+  private int peek() {
+    if (pos < end)
+      return buffer[pos];
+    return EOF;
+  }
+
+  private static boolean isWhitespace(char c) {
+    if (c < 128)
+      return (ASCII_CLASS[c] & WHITESPACE) != 0;
+    return Character.isWhitespace(c);
+  }
+
+  private static boolean isDigit(char c) {
+    if (c < 128)
+      return (ASCII_CLASS[c] & DIGIT) != 0;
+    return Character.isDigit(c);
+  }
+
+  private static boolean isLetter(char c) {
+    if (c < 128)
+      return (ASCII_CLASS[c] & LETTER) != 0;
+    return Character.isLetter(c);
+  }
+
+  private static void reserve(String word, TokenType type) {
+    char first = word.charAt(0);
+    String[] words = RESERVED_WORDS[first];
+    TokenType[] types = RESERVED_TYPES[first];
+    int n = words == null ? 0 : words.length;
+    String[] newWords = new String[n + 1];
+    TokenType[] newTypes = new TokenType[n + 1];
+    for (int i = 0; i < n; ++i) {
+      newWords[i] = words[i];
+      newTypes[i] = types[i];
+    }
+    newWords[n] = word;
+    newTypes[n] = type;
+    RESERVED_WORDS[first] = newWords;
+    RESERVED_TYPES[first] = newTypes;
+  }
+
+  // read the whole stream and decode it
+  private static char[] readAll(InputStream instream) throws MyPLException {
+    try {
+      byte[] bytes = instream.readAllBytes();
+      char[] chars = new char[bytes.length];
+      for (int i = 0; i < bytes.length; ++i) {
+        if (bytes[i] < 0)
+          return new String(bytes, Charset.defaultCharset()).toCharArray();
+        chars[i] = (char) bytes[i];
+      }
+      return chars;
+    } catch (IOException e) {
+      throw new MyPLException("Lexer", "read error", 1, 1);
+    }
+  }
+
+  // memory map the whole file and decode it
+  private static char[] mapAll(FileInputStream instream) throws MyPLException {
+    try (FileChannel channel = instream.getChannel()) {
+      int size = (int) channel.size();
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      char[] chars = new char[size];
+      for (int i = 0; i < size; ++i) {
+        byte b = mapped.get(i);
+        if (b < 0) {
+          byte[] bytes = new byte[size];
+          mapped.get(0, bytes);
+          return new String(bytes, Charset.defaultCharset()).toCharArray();
+        }
+        chars[i] = (char) b;
+      }
+      return chars;
+    } catch (IOException e) {
+      throw new MyPLException("Lexer", "read error", 1, 1);
+    }
+  }
+}
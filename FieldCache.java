@@ -0,0 +1,54 @@
+/**
+ * File: FieldCache.java
+ *
+ * An inline cache for the fields of a variable path (IDRValue.fieldCache,
+ * LValue.fieldCache): for each field of the path, the shape of the
+ * object it was last found in and its slot there. A field found in an
+ * object of the cached shape is an indexed load; an object of any other
+ * shape (a type declared again under the same name, say) has its slot
+ * looked up by name, which is then cached instead. A field the object's
+ * declaration doesn't have (the path was checked against another
+ * declaration of the type's name) reads as nil, and setting it does
+ * nothing (as the by-name heap's replace did).
+ */
+
+import java.util.List;
+
+public final class FieldCache {
+
+  private final List<Token> path;
+  private final Shape[] shapes;
+  private final int[] slots;
+
+  public FieldCache(List<Token> path) {
+    this.path = path;
+    this.shapes = new Shape[path.size() - 1];
+    this.slots = new int[path.size() - 1];
+  }
+
+  // the value of the path's i-th name (from 1, the first field) in the
+  // given object, or nil if the object has no such field
+  public Object get(MyPLObject obj, int i) {
+    final int slot = slot(obj, i);
+    return slot >= 0 ? obj.fields[slot] : null;
+  }
+
+  // sets the path's i-th name in the given object to the given value,
+  // if the object has such a field
+  public void set(MyPLObject obj, int i, Object value) {
+    final int slot = slot(obj, i);
+    if (slot >= 0)
+      obj.fields[slot] = value;
+  }
+
+  // the slot of the path's i-th name in the given object, or -1 if it
+  // has no such field
+  private int slot(MyPLObject obj, int i) {
+    Shape shape = obj.shape;
+    if (shapes[i - 1] != shape) {
+      slots[i - 1] = shape.slot(path.get(i).lexeme());
+      shapes[i - 1] = shape;
+    }
+    return slots[i - 1];
+  }
+}
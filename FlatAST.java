@@ -0,0 +1,881 @@
+/**
+ * File: FlatAST.java
+ *
+ * Compact, arena based representation of a MyPL AST, used as the
+ * storage format of checked programs (see ProgramCache): the parser
+ * and the passes over a program work on ordinary AST nodes, which
+ * of() flattens for storing, and toStmtList() rebuilds once when a
+ * stored program is loaded. Instead of one heap object per node (each
+ * with its own ArrayLists and Token references), nodes live in
+ * parallel primitive arrays: a node kind, the index of its first child
+ * and of its next sibling, and a small flag word. Tokens are leaf nodes whose lexeme is an index into an
+ * interned string pool and whose line and column are packed into a
+ * single long, so no Token objects (or duplicate lexeme strings) are
+ * kept alive. Node 0 is the root statement list.
+ *
+ * The children of each kind, in order (NONE marks an absent optional
+ * child):
+ *
+ *   STMT_LIST      stmt*
+ *   VAR_DECL       TOKEN(id) TOKEN(type)|NONE EXPR
+ *   ASSIGN         LVALUE EXPR
+ *   RETURN         TOKEN(return) EXPR|NONE
+ *   IF             BASIC_IF(if) BASIC_IF(elif)* STMT_LIST(else)   flag: has else
+ *   BASIC_IF       EXPR STMT_LIST
+ *   WHILE          EXPR STMT_LIST
+ *   FOR            TOKEN(var) EXPR EXPR STMT_LIST
+ *   TYPE_DECL      TOKEN(id) VAR_DECL*
+ *   FUN_DECL       TOKEN(type) TOKEN(name) FUN_PARAM* STMT_LIST
+ *   FUN_PARAM      TOKEN(type) TOKEN(name)
+ *   EXPR           term TOKEN(op)|NONE EXPR|NONE                  flag: negated
+ *   BINARY         term TOKEN(op) term
+ *   UNARY          TOKEN(op) term
+ *   SIMPLE_TERM    rvalue
+ *   COMPLEX_TERM   EXPR
+ *   LVALUE         TOKEN(id)+
+ *   SIMPLE_RVALUE  TOKEN(value)
+ *   NEW_RVALUE     TOKEN(type)
+ *   CALL_RVALUE    TOKEN(name) EXPR*
+ *   ID_RVALUE      TOKEN(id)+
+ *   NEGATED_RVALUE EXPR
+ *
+ * The nodes the interpreter reads static types from also keep the type
+ * checker's results: the type of EXPR, BINARY, VAR_DECL, LVALUE and
+ * ID_RVALUE nodes, and the Operation of EXPR and BINARY nodes. The
+ * rebuilt AST gets them back, along with the FunctionType of each
+ * function and the StructType of each type declaration and new, so a
+ * program loaded from the cache runs exactly as a checked one.
+ *
+ * write() and read() give the arrays a binary form (see ProgramCache),
+ * tagged with FORMAT_VERSION, which must be bumped whenever the
+ * layout above or the encoding changes.
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FlatAST {
+
+  // node kinds
+  public static final byte NONE = 0;
+  public static final byte TOKEN = 1;
+  public static final byte STMT_LIST = 2;
+  public static final byte VAR_DECL = 3;
+  public static final byte ASSIGN = 4;
+  public static final byte RETURN = 5;
+  public static final byte IF = 6;
+  public static final byte BASIC_IF = 7;
+  public static final byte WHILE = 8;
+  public static final byte FOR = 9;
+  public static final byte TYPE_DECL = 10;
+  public static final byte FUN_DECL = 11;
+  public static final byte FUN_PARAM = 12;
+  public static final byte EXPR = 13;
+  public static final byte BINARY = 14;
+  public static final byte UNARY = 15;
+  public static final byte SIMPLE_TERM = 16;
+  public static final byte COMPLEX_TERM = 17;
+  public static final byte LVALUE = 18;
+  public static final byte SIMPLE_RVALUE = 19;
+  public static final byte NEW_RVALUE = 20;
+  public static final byte CALL_RVALUE = 21;
+  public static final byte ID_RVALUE = 22;
+  public static final byte NEGATED_RVALUE = 23;
+
+  // binary format version written by write() and checked by read()
+  public static final int FORMAT_VERSION = 2;
+
+  private static final TokenType[] TYPES = TokenType.values();
+  private static final Operation[] OPERATIONS = Operation.values();
+  // the primitive types by type code (see typeCode); struct types
+  // follow, STRUCT_CODE plus the lexeme index of their name
+  private static final Type[] PRIMITIVES = {
+    null, Type.INT, Type.DOUBLE, Type.BOOL, Type.CHAR, Type.STRING, Type.NIL
+  };
+  private static final int STRUCT_CODE = PRIMITIVES.length;
+
+  private int size = 0;          // number of nodes
+  private byte[] kinds;          // node kinds
+  private int[] firstChild;      // index of first child, or -1
+  private int[] nextSibling;     // index of next sibling, or -1
+  private int[] lastChild;       // index of last child, or -1 (for appending)
+  private int[] values;          // token lexeme index, or node flags
+  private byte[] tokenTypes;     // token type ordinals (TOKEN nodes)
+  private long[] positions;      // packed line and column (TOKEN nodes)
+  private int[] typeCodes;       // static type (typed nodes, see typeCode)
+  private byte[] operations;     // Operation ordinal + 1, or 0 (EXPR, BINARY)
+
+  // interned lexemes
+  private final List<String> lexemes = new ArrayList<>();
+  private final Map<String,Integer> lexemeIds = new HashMap<>();
+  // the struct types of the AST being rebuilt, by name
+  private Map<String,StructType> structTypes = null;
+
+  /**
+   * Create an empty flat AST with room for about capacity nodes.
+   */
+  public FlatAST(int capacity) {
+    capacity = Math.max(16, capacity);
+    kinds = new byte[capacity];
+    firstChild = new int[capacity];
+    nextSibling = new int[capacity];
+    lastChild = new int[capacity];
+    values = new int[capacity];
+    tokenTypes = new byte[capacity];
+    positions = new long[capacity];
+    typeCodes = new int[capacity];
+    operations = new byte[capacity];
+  }
+
+  /**
+   * Flattens the given AST.
+   */
+  public static FlatAST of(StmtList stmtList) {
+    FlatAST ast = new FlatAST(1024);
+    ast.add(stmtList);
+    return ast;
+  }
+
+  // ------------------------------------------------------------
+  // accessors
+  // ------------------------------------------------------------
+
+  public int size() {
+    return size;
+  }
+
+  public byte kind(int node) {
+    return kinds[node];
+  }
+
+  // first child of the node, or -1
+  public int firstChild(int node) {
+    return firstChild[node];
+  }
+
+  // next sibling of the node, or -1
+  public int nextSibling(int node) {
+    return nextSibling[node];
+  }
+
+  // the i-th child of the node, or -1
+  public int child(int node, int i) {
+    int child = firstChild[node];
+    while (i-- > 0 && child >= 0)
+      child = nextSibling[child];
+    return child;
+  }
+
+  // number of children of the node
+  public int childCount(int node) {
+    int count = 0;
+    for (int child = firstChild[node]; child >= 0; child = nextSibling[child])
+      count++;
+    return count;
+  }
+
+  // flags of a non-token node (negated for EXPR, has else for IF)
+  public boolean flag(int node) {
+    return values[node] != 0;
+  }
+
+  public TokenType tokenType(int node) {
+    return TYPES[tokenTypes[node]];
+  }
+
+  public String lexeme(int node) {
+    return lexemes.get(values[node]);
+  }
+
+  public int line(int node) {
+    return (int)(positions[node] >>> 32);
+  }
+
+  public int column(int node) {
+    return (int)positions[node];
+  }
+
+  // the line and column of a token node packed into a single long
+  public long position(int node) {
+    return positions[node];
+  }
+
+  // ------------------------------------------------------------
+  // building
+  // ------------------------------------------------------------
+
+  /**
+   * Appends a new node of the given kind as the last child of parent
+   * (or as a root when parent is -1), returning its index.
+   */
+  public int addNode(int parent, byte kind, boolean flag) {
+    int node = newNode(parent, kind);
+    values[node] = flag ? 1 : 0;
+    return node;
+  }
+
+  /**
+   * Appends a token leaf (or a NONE leaf if token is null) as the
+   * last child of parent, returning its index.
+   */
+  public int addToken(int parent, Token token) {
+    if (token == null)
+      return newNode(parent, NONE);
+    int node = newNode(parent, TOKEN);
+    values[node] = intern(token.lexeme());
+    tokenTypes[node] = (byte)token.type().ordinal();
+    positions[node] = pack(token.row(), token.column());
+    return node;
+  }
+
+  // packs a line and column into a single long
+  public static long pack(int line, int column) {
+    return ((long)line << 32) | (column & 0xFFFFFFFFL);
+  }
+
+  private int newNode(int parent, byte kind) {
+    if (size == kinds.length)
+      grow();
+    int node = size++;
+    kinds[node] = kind;
+    typeCodes[node] = 0;
+    operations[node] = 0;
+    firstChild[node] = -1;
+    nextSibling[node] = -1;
+    lastChild[node] = -1;
+    if (parent >= 0) {
+      if (lastChild[parent] < 0)
+        firstChild[parent] = node;
+      else
+        nextSibling[lastChild[parent]] = node;
+      lastChild[parent] = node;
+    }
+    return node;
+  }
+
+  private int intern(String lexeme) {
+    // a pool loaded by read() is only indexed when first added to
+    for (int i = lexemeIds.size(); i < lexemes.size(); i++)
+      lexemeIds.put(lexemes.get(i), i);
+    Integer id = lexemeIds.get(lexeme);
+    if (id == null) {
+      id = lexemes.size();
+      lexemes.add(lexeme);
+      lexemeIds.put(lexeme, id);
+    }
+    return id;
+  }
+
+  // the code of a static type: 0 for none, an index into PRIMITIVES,
+  // or STRUCT_CODE plus the lexeme index of a struct type's name
+  private int typeCode(Type type) {
+    if (type == null)
+      return 0;
+    for (int i = 1; i < STRUCT_CODE; i++)
+      if (PRIMITIVES[i] == type)
+        return i;
+    return STRUCT_CODE + intern(type.name());
+  }
+
+  // records the checker's results for a typed node
+  private void annotate(int node, Type type, Operation operation) {
+    typeCodes[node] = typeCode(type);
+    operations[node] = (byte)(operation == null ? 0 : operation.ordinal() + 1);
+  }
+
+  // whether nodes of the given kind have a type code, and an operation
+  private static boolean isTyped(int kind) {
+    return kind == EXPR || kind == BINARY || kind == VAR_DECL || kind == LVALUE
+      || kind == ID_RVALUE;
+  }
+
+  private static boolean hasOperation(int kind) {
+    return kind == EXPR || kind == BINARY;
+  }
+
+  private void grow() {
+    int capacity = kinds.length * 2;
+    kinds = Arrays.copyOf(kinds, capacity);
+    firstChild = Arrays.copyOf(firstChild, capacity);
+    nextSibling = Arrays.copyOf(nextSibling, capacity);
+    lastChild = Arrays.copyOf(lastChild, capacity);
+    values = Arrays.copyOf(values, capacity);
+    tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    typeCodes = Arrays.copyOf(typeCodes, capacity);
+    operations = Arrays.copyOf(operations, capacity);
+  }
+
+  // flattening of the AST node classes, appending under parent
+
+  private int add(StmtList stmtList) {
+    return add(-1, stmtList);
+  }
+
+  private int add(int parent, StmtList stmtList) {
+    int node = addNode(parent, STMT_LIST, false);
+    for (Stmt stmt : stmtList.stmts)
+      addStmt(node, stmt);
+    return node;
+  }
+
+  private void addStmt(int parent, Stmt stmt) {
+    if (stmt instanceof VarDeclStmt)
+      add(parent, (VarDeclStmt)stmt);
+    else if (stmt instanceof AssignStmt) {
+      AssignStmt assign = (AssignStmt)stmt;
+      int node = addNode(parent, ASSIGN, false);
+      int lhs = addNode(node, LVALUE, false);
+      annotate(lhs, assign.lhs.type, null);
+      addPath(lhs, assign.lhs.path);
+      add(node, assign.rhs);
+    }
+    else if (stmt instanceof ReturnStmt) {
+      ReturnStmt ret = (ReturnStmt)stmt;
+      int node = addNode(parent, RETURN, false);
+      addToken(node, ret.returnToken);
+      add(node, ret.returnExpr);
+    }
+    else if (stmt instanceof IfStmt) {
+      IfStmt ifStmt = (IfStmt)stmt;
+      int node = addNode(parent, IF, ifStmt.hasElse);
+      add(node, ifStmt.ifPart);
+      for (BasicIf elif : ifStmt.elsifs)
+        add(node, elif);
+      add(node, ifStmt.elseStmtList);
+    }
+    else if (stmt instanceof WhileStmt) {
+      WhileStmt whileStmt = (WhileStmt)stmt;
+      int node = addNode(parent, WHILE, false);
+      add(node, whileStmt.boolExpr);
+      add(node, whileStmt.stmtList);
+    }
+    else if (stmt instanceof ForStmt) {
+      ForStmt forStmt = (ForStmt)stmt;
+      int node = addNode(parent, FOR, false);
+      addToken(node, forStmt.var);
+      add(node, forStmt.startExpr);
+      add(node, forStmt.endExpr);
+      add(node, forStmt.stmtList);
+    }
+    else if (stmt instanceof TypeDeclStmt) {
+      TypeDeclStmt typeDecl = (TypeDeclStmt)stmt;
+      int node = addNode(parent, TYPE_DECL, false);
+      addToken(node, typeDecl.typeId);
+      for (VarDeclStmt field : typeDecl.fields)
+        add(node, field);
+    }
+    else if (stmt instanceof FunDeclStmt) {
+      FunDeclStmt funDecl = (FunDeclStmt)stmt;
+      int node = addNode(parent, FUN_DECL, false);
+      addToken(node, funDecl.returnType);
+      addToken(node, funDecl.funName);
+      for (FunParam param : funDecl.params) {
+        int paramNode = addNode(node, FUN_PARAM, false);
+        addToken(paramNode, param.paramType);
+        addToken(paramNode, param.paramName);
+      }
+      add(node, funDecl.stmtList);
+    }
+    else
+      add(parent, (Expr)stmt);
+  }
+
+  private void add(int parent, VarDeclStmt varDecl) {
+    int node = addNode(parent, VAR_DECL, false);
+    annotate(node, varDecl.type, null);
+    addToken(node, varDecl.varId);
+    addToken(node, varDecl.varType);
+    add(node, varDecl.varExpr);
+  }
+
+  private void add(int parent, BasicIf basicIf) {
+    int node = addNode(parent, BASIC_IF, false);
+    add(node, basicIf.boolExpr);
+    add(node, basicIf.stmtList);
+  }
+
+  // right-linked Expr chains are followed in a loop, not recursively
+  private void add(int parent, Expr expr) {
+    if (expr == null) {
+      addNode(parent, NONE, false);
+      return;
+    }
+    while (expr != null) {
+      int node = addNode(parent, EXPR, expr.negated);
+      annotate(node, expr.type, expr.operation);
+      if (expr.first == null)
+        addNode(node, NONE, false);
+      else
+        addTerm(node, expr.first);
+      addToken(node, expr.operator);
+      if (expr.rest == null)
+        addNode(node, NONE, false);
+      parent = node;
+      expr = expr.rest;
+    }
+  }
+
+  private void addTerm(int parent, ExprTerm term) {
+    if (term instanceof BinaryExpr) {
+      // left spine nodes top down, then each operator and rhs bottom up
+      BinaryExpr binary = (BinaryExpr)term;
+      List<Integer> spine = new ArrayList<>();
+      spine.add(addNode(parent, BINARY, false));
+      while (binary.lhs instanceof BinaryExpr) {
+        binary = (BinaryExpr)binary.lhs;
+        spine.add(addNode(spine.get(spine.size() - 1), BINARY, false));
+      }
+      addTerm(spine.get(spine.size() - 1), binary.lhs);
+      for (int i = spine.size() - 1; i >= 0; i--) {
+        annotate(spine.get(i), binary.type, binary.operation);
+        addToken(spine.get(i), binary.operator);
+        addTerm(spine.get(i), binary.rhs);
+        binary = binary.parent;
+      }
+    }
+    else if (term instanceof UnaryExpr) {
+      UnaryExpr unary = (UnaryExpr)term;
+      int node = addNode(parent, UNARY, false);
+      addToken(node, unary.operator);
+      addTerm(node, unary.operand);
+    }
+    else if (term instanceof SimpleTerm)
+      addRValue(addNode(parent, SIMPLE_TERM, false), ((SimpleTerm)term).rvalue);
+    else
+      add(addNode(parent, COMPLEX_TERM, false), ((ComplexTerm)term).expr);
+  }
+
+  private void addRValue(int parent, RValue rvalue) {
+    if (rvalue instanceof SimpleRValue)
+      addToken(addNode(parent, SIMPLE_RVALUE, false), ((SimpleRValue)rvalue).val);
+    else if (rvalue instanceof NewRValue)
+      addToken(addNode(parent, NEW_RVALUE, false), ((NewRValue)rvalue).typeId);
+    else if (rvalue instanceof CallRValue) {
+      CallRValue call = (CallRValue)rvalue;
+      int node = addNode(parent, CALL_RVALUE, false);
+      addToken(node, call.funName);
+      for (Expr arg : call.argList)
+        add(node, arg);
+    }
+    else if (rvalue instanceof IDRValue) {
+      int node = addNode(parent, ID_RVALUE, false);
+      annotate(node, ((IDRValue)rvalue).type, null);
+      addPath(node, ((IDRValue)rvalue).path);
+    }
+    else
+      add(addNode(parent, NEGATED_RVALUE, false), ((NegatedRValue)rvalue).expr);
+  }
+
+  private void addPath(int parent, List<Token> path) {
+    for (Token token : path)
+      addToken(parent, token);
+  }
+
+  // ------------------------------------------------------------
+  // binary form
+  // ------------------------------------------------------------
+
+  // Nodes are written in index order, which for an AST built by of()
+  // is preorder, so the links need not be stored: each node is its
+  // kind byte (with FLAG_BIT set for a true flag) and its child count
+  // as a varint. Token nodes then add their type, their lexeme index,
+  // the change in line from the previous token (zigzag) and their
+  // column; typed nodes add their type code (a varint), and EXPR and
+  // BINARY nodes their operation byte. The lexeme pool follows the
+  // nodes.
+
+  private static final int FLAG_BIT = 0x80;
+
+  /**
+   * Writes the nodes and lexeme pool (without a version header).
+   */
+  public void write(DataOutputStream out) throws IOException {
+    writeVarint(out, size);
+    int line = 0;
+    for (int i = 0; i < size; i++) {
+      out.write(kinds[i] == TOKEN || values[i] == 0 ? kinds[i] : kinds[i] | FLAG_BIT);
+      writeVarint(out, childCount(i));
+      if (kinds[i] == TOKEN) {
+        out.write(tokenTypes[i]);
+        writeVarint(out, values[i]);
+        int delta = line(i) - line;
+        writeVarint(out, (delta << 1) ^ (delta >> 31));
+        writeVarint(out, column(i));
+        line = line(i);
+      }
+      else if (isTyped(kinds[i])) {
+        writeVarint(out, typeCodes[i]);
+        if (hasOperation(kinds[i]))
+          out.write(operations[i]);
+      }
+    }
+    writeVarint(out, lexemes.size());
+    for (String lexeme : lexemes) {
+      byte[] bytes = lexeme.getBytes(StandardCharsets.UTF_8);
+      writeVarint(out, bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads a flat AST written by write() from data, starting at the
+   * given offset and running to the end of the array. Malformed input
+   * is reported as an IOException.
+   */
+  public static FlatAST read(byte[] data, int offset) throws IOException {
+    try {
+      int[] pos = {offset};
+      int size = readVarint(data, pos);
+      if (size <= 0)
+        throw new IOException("invalid node count");
+      FlatAST ast = new FlatAST(Math.min(size, data.length));
+      // parents still expecting children, and how many each expects
+      int[] parents = new int[64];
+      int[] remaining = new int[64];
+      int depth = 0;
+      int line = 0;
+      for (int i = 0; i < size; i++) {
+        int kind = data[pos[0]++] & 0xFF;
+        int children = readVarint(data, pos);
+        if (children < 0)
+          throw new IOException("invalid child count at node " + i);
+        int parent = depth > 0 ? parents[depth - 1] : -1;
+        if (i > 0 && parent < 0)
+          throw new IOException("more than one root node");
+        int node = ast.newNode(parent, (byte)(kind & ~FLAG_BIT));
+        if (depth > 0 && --remaining[depth - 1] == 0)
+          depth--;
+        if (kind == TOKEN) {
+          int type = data[pos[0]++];
+          int lexeme = readVarint(data, pos);
+          if (type < 0 || type >= TYPES.length || lexeme < 0)
+            throw new IOException("invalid token at node " + i);
+          int delta = readVarint(data, pos);
+          line += (delta >>> 1) ^ -(delta & 1);
+          ast.tokenTypes[node] = (byte)type;
+          ast.values[node] = lexeme;
+          ast.positions[node] = pack(line, readVarint(data, pos));
+        }
+        else {
+          ast.values[node] = (kind & FLAG_BIT) != 0 ? 1 : 0;
+          if (isTyped(kind & ~FLAG_BIT)) {
+            ast.typeCodes[node] = readVarint(data, pos);
+            if (hasOperation(kind & ~FLAG_BIT))
+              ast.operations[node] = data[pos[0]++];
+            if (ast.typeCodes[node] < 0 || ast.operations[node] < 0
+                || ast.operations[node] > OPERATIONS.length)
+              throw new IOException("invalid annotation at node " + i);
+          }
+        }
+        if (children > 0) {
+          if (depth == parents.length) {
+            parents = Arrays.copyOf(parents, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+          }
+          parents[depth] = node;
+          remaining[depth++] = children;
+        }
+      }
+      if (depth > 0)
+        throw new IOException("truncated node list");
+      int count = readVarint(data, pos);
+      if (count < 0)
+        throw new IOException("invalid lexeme count");
+      for (int i = 0; i < count; i++) {
+        int length = readVarint(data, pos);
+        if (length < 0)
+          throw new IOException("invalid lexeme length");
+        ast.lexemes.add(new String(data, pos[0], length, StandardCharsets.UTF_8));
+        pos[0] += length;
+      }
+      if (pos[0] != data.length)
+        throw new IOException("trailing data");
+      for (int i = 0; i < size; i++)
+        if ((ast.kinds[i] == TOKEN && ast.values[i] >= count)
+            || ast.typeCodes[i] - STRUCT_CODE >= count)
+          throw new IOException("invalid lexeme at node " + i);
+      return ast;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("truncated data");
+    }
+  }
+
+  private static void writeVarint(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  // reads a varint at pos[0], advancing it
+  private static int readVarint(byte[] data, int[] pos) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = data[pos[0]++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0)
+        return value;
+    }
+    throw new IOException("invalid varint");
+  }
+
+  // ------------------------------------------------------------
+  // rebuilding the AST
+  // ------------------------------------------------------------
+
+  /**
+   * Rebuilds the ordinary AST for the root statement list. Each call
+   * builds new nodes, so a program is rebuilt once and then walked.
+   */
+  public StmtList toStmtList() {
+    structTypes = new HashMap<>();
+    return stmtList(0);
+  }
+
+  // the static type recorded for a typed node
+  private Type type(int node) {
+    int code = typeCodes[node];
+    return code < STRUCT_CODE ? PRIMITIVES[code] : structType(lexemes.get(code - STRUCT_CODE));
+  }
+
+  // the type with the given name, as the type checker resolves it
+  private Type typeNamed(String name) {
+    Type type = Type.primitive(name);
+    return type != null ? type : structType(name);
+  }
+
+  private StructType structType(String name) {
+    return structTypes.computeIfAbsent(name, StructType::new);
+  }
+
+  // the operation recorded for an EXPR or BINARY node, or null
+  private Operation operation(int node) {
+    return operations[node] == 0 ? null : OPERATIONS[operations[node] - 1];
+  }
+
+  // a Token for the given token node (null for a NONE node)
+  public Token token(int node) {
+    if (kinds[node] != TOKEN)
+      return null;
+    return new Token(tokenType(node), lexeme(node), line(node), column(node));
+  }
+
+  private StmtList stmtList(int node) {
+    StmtList stmtList = new StmtList();
+    for (int child = firstChild[node]; child >= 0; child = nextSibling[child])
+      stmtList.stmts.add(stmt(child));
+    return stmtList;
+  }
+
+  private Stmt stmt(int node) {
+    int child = firstChild[node];
+    switch (kinds[node]) {
+    case VAR_DECL:
+      return varDecl(node);
+    case ASSIGN: {
+      AssignStmt assign = new AssignStmt();
+      assign.lhs = new LValue();
+      assign.lhs.type = type(child);
+      path(firstChild[child], assign.lhs.path);
+      assign.rhs = expr(nextSibling[child]);
+      return assign;
+    }
+    case RETURN: {
+      ReturnStmt ret = new ReturnStmt();
+      ret.returnToken = token(child);
+      ret.returnExpr = expr(nextSibling[child]);
+      return ret;
+    }
+    case IF: {
+      IfStmt ifStmt = new IfStmt();
+      ifStmt.hasElse = flag(node);
+      ifStmt.ifPart = basicIf(child);
+      for (child = nextSibling[child]; nextSibling[child] >= 0; child = nextSibling[child])
+        ifStmt.elsifs.add(basicIf(child));
+      ifStmt.elseStmtList = stmtList(child);
+      return ifStmt;
+    }
+    case WHILE: {
+      WhileStmt whileStmt = new WhileStmt();
+      whileStmt.boolExpr = expr(child);
+      whileStmt.stmtList = stmtList(nextSibling[child]);
+      return whileStmt;
+    }
+    case FOR: {
+      ForStmt forStmt = new ForStmt();
+      forStmt.var = token(child);
+      child = nextSibling[child];
+      forStmt.startExpr = expr(child);
+      child = nextSibling[child];
+      forStmt.endExpr = expr(child);
+      forStmt.stmtList = stmtList(nextSibling[child]);
+      return forStmt;
+    }
+    case TYPE_DECL: {
+      TypeDeclStmt typeDecl = new TypeDeclStmt();
+      typeDecl.typeId = token(child);
+      typeDecl.type = structType(typeDecl.typeId.lexeme());
+      for (child = nextSibling[child]; child >= 0; child = nextSibling[child])
+        typeDecl.fields.add(varDecl(child));
+      return typeDecl;
+    }
+    case FUN_DECL: {
+      FunDeclStmt funDecl = new FunDeclStmt();
+      funDecl.returnType = token(child);
+      child = nextSibling[child];
+      funDecl.funName = token(child);
+      List<Type> paramTypes = new ArrayList<>();
+      for (child = nextSibling[child]; kinds[child] == FUN_PARAM; child = nextSibling[child]) {
+        FunParam param = new FunParam();
+        param.paramType = token(firstChild[child]);
+        param.paramName = token(nextSibling[firstChild[child]]);
+        funDecl.params.add(param);
+        paramTypes.add(typeNamed(param.paramType.lexeme()));
+      }
+      funDecl.type = new FunctionType(paramTypes, typeNamed(funDecl.returnType.lexeme()));
+      funDecl.stmtList = stmtList(child);
+      return funDecl;
+    }
+    default:
+      return expr(node);
+    }
+  }
+
+  private VarDeclStmt varDecl(int node) {
+    VarDeclStmt varDecl = new VarDeclStmt();
+    varDecl.type = type(node);
+    int child = firstChild[node];
+    varDecl.varId = token(child);
+    child = nextSibling[child];
+    varDecl.varType = token(child);
+    varDecl.varExpr = expr(nextSibling[child]);
+    return varDecl;
+  }
+
+  private BasicIf basicIf(int node) {
+    BasicIf basicIf = new BasicIf();
+    basicIf.boolExpr = expr(firstChild[node]);
+    basicIf.stmtList = stmtList(nextSibling[firstChild[node]]);
+    return basicIf;
+  }
+
+  // rebuilds a right-linked Expr chain in a loop, not recursively
+  private Expr expr(int node) {
+    if (kinds[node] == NONE)
+      return null;
+    Expr head = null;
+    Expr prev = null;
+    while (node >= 0 && kinds[node] == EXPR) {
+      Expr expr = new Expr();
+      expr.negated = flag(node);
+      expr.type = type(node);
+      expr.operation = operation(node);
+      int child = firstChild[node];
+      expr.first = term(child);
+      child = nextSibling[child];
+      expr.operator = token(child);
+      if (head == null)
+        head = expr;
+      else
+        prev.rest = expr;
+      prev = expr;
+      node = nextSibling[child];
+    }
+    return head;
+  }
+
+  private ExprTerm term(int node) {
+    int child = firstChild[node];
+    switch (kinds[node]) {
+    case BINARY: {
+      // down the left spine, then build each node bottom up (a
+      // BINARY lhs is always added right after its parent, so the
+      // parent of spine node i is node i - 1)
+      int bottom = node;
+      while (kinds[firstChild[bottom]] == BINARY)
+        bottom = firstChild[bottom];
+      ExprTerm lhs = term(firstChild[bottom]);
+      for (int curr = bottom; ; curr--) {
+        BinaryExpr binary = new BinaryExpr();
+        binary.type = type(curr);
+        binary.operation = operation(curr);
+        binary.lhs = lhs;
+        if (lhs instanceof BinaryExpr)
+          ((BinaryExpr)lhs).parent = binary;
+        child = nextSibling[firstChild[curr]];
+        binary.operator = token(child);
+        binary.rhs = term(nextSibling[child]);
+        lhs = binary;
+        if (curr == node)
+          return binary;
+      }
+    }
+    case UNARY: {
+      UnaryExpr unary = new UnaryExpr();
+      unary.operator = token(child);
+      unary.operand = term(nextSibling[child]);
+      return unary;
+    }
+    case SIMPLE_TERM: {
+      SimpleTerm simple = new SimpleTerm();
+      simple.rvalue = rvalue(child);
+      return simple;
+    }
+    case COMPLEX_TERM: {
+      ComplexTerm complex = new ComplexTerm();
+      complex.expr = expr(child);
+      return complex;
+    }
+    default:
+      return null;
+    }
+  }
+
+  private RValue rvalue(int node) {
+    int child = firstChild[node];
+    switch (kinds[node]) {
+    case SIMPLE_RVALUE: {
+      SimpleRValue simple = new SimpleRValue();
+      simple.val = token(child);
+      return simple;
+    }
+    case NEW_RVALUE: {
+      NewRValue newRValue = new NewRValue();
+      newRValue.typeId = token(child);
+      newRValue.type = structType(newRValue.typeId.lexeme());
+      return newRValue;
+    }
+    case CALL_RVALUE: {
+      CallRValue call = new CallRValue();
+      call.funName = token(child);
+      for (child = nextSibling[child]; child >= 0; child = nextSibling[child])
+        call.argList.add(expr(child));
+      return call;
+    }
+    case ID_RVALUE: {
+      IDRValue idRValue = new IDRValue();
+      idRValue.type = type(node);
+      path(child, idRValue.path);
+      return idRValue;
+    }
+    default: {
+      NegatedRValue negated = new NegatedRValue();
+      negated.expr = expr(child);
+      return negated;
+    }
+    }
+  }
+
+  private void path(int node, List<Token> path) {
+    for (; node >= 0; node = nextSibling[node])
+      path.add(token(node));
+  }
+}
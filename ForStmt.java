@@ -5,6 +5,7 @@ public class ForStmt implements Stmt {
   public Expr startExpr = null;
   public Expr endExpr = null;
   public StmtList stmtList = new StmtList();
+  public int slot = -1; // of the loop variable (set by the resolver)
   
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
@@ -0,0 +1,42 @@
+/**
+ * File: Frame.java
+ *
+ * The variable slots of a running block, function call or new (see
+ * Resolver), linked to the frame of the enclosing scope. Frames are
+ * reused once released: a block's frame is kept by its parent frame
+ * (spare) for the next block run from it, and a call's frame goes back
+ * to its function's free list (FunDeclStmt.freeFrames, linked through
+ * next). Slots are always assigned before they are read, so a reused
+ * frame isn't cleared; instead a collection (see
+ * Interpreter.setCollection) now and then trims the free lists and
+ * clears the slots of released frames, so they don't keep objects the
+ * program can no longer reach alive.
+ *
+ * With unboxed values (see Interpreter.useUnboxed) a variable of type
+ * int, double, bool or char keeps its value in prims, as raw bits, and
+ * its slot holds UNBOXED (or null when the variable is nil). Other
+ * frames have no prims.
+ */
+
+public final class Frame {
+
+  // the slot of a variable whose value is in prims
+  static final Object UNBOXED = new Object();
+
+  Frame parent;
+  final Object[] slots;
+  final long[] prims;
+  Frame spare = null; // a released child frame
+  Frame next = null;  // the next free frame of a function
+  Frame caller = null; // the running frame a call's or new's frame was made from
+
+  public Frame(Frame parent, int size) {
+    this(parent, size, false);
+  }
+
+  public Frame(Frame parent, int size, boolean unboxed) {
+    this.parent = parent;
+    this.slots = new Object[size];
+    this.prims = unboxed ? new long[size] : null;
+  }
+}
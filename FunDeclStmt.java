@@ -7,6 +7,12 @@ public class FunDeclStmt implements Stmt {
   public Token funName = null;
   public ArrayList<FunParam> params = new ArrayList<>();
   public StmtList stmtList = new StmtList();
+  public Parser bodyParser = null; // set while the body is unparsed (lazy parsing)
+  public int bodyStart = -1;       // token index of the unparsed body
+  public FunctionType type = null; // set by the type checker
+  public int frameSize = 0;        // slots of a call's frame (set by the resolver)
+  public Frame freeFrames = null;  // released call frames, for reuse
+  public Object declScope = null; // frame or environment declared in (set by the interpreter)
   
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
@@ -0,0 +1,31 @@
+/**
+ * File: FunctionType.java
+ *
+ * A function signature: the parameter types and the return type.
+ */
+
+import java.util.List;
+
+public class FunctionType extends Type {
+
+  private final Type[] params;
+  private final Type returnType;
+
+  public FunctionType(List<Type> params, Type returnType) {
+    super("fun");
+    this.params = params.toArray(new Type[0]);
+    this.returnType = returnType;
+  }
+
+  public int paramCount() {
+    return params.length;
+  }
+
+  public Type paramType(int i) {
+    return params[i];
+  }
+
+  public Type returnType() {
+    return returnType;
+  }
+}
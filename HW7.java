@@ -5,6 +5,31 @@
  * File: HW7.java
  *
  * Basic test driver for the interpreter.
+ *
+ * Usage: java HW7 [options] [file]
+ *
+ * Options:
+ *   -fastlex   scan the whole source from a char buffer (FastLexer)
+ *   -tokens    scan into a compact TokenStream before parsing (implies -fastlex)
+ *   -parlex    scan large sources in parallel chunks (implies -tokens)
+ *   -pipeline  lex on a separate thread, feeding the parser through a
+ *              bounded token buffer, and report the overlap achieved
+ *   -prec      parse expressions by operator precedence into binary and
+ *              unary expression trees
+ *   -cache     reuse the checked program stored in .mypl-cache for the
+ *              same source, skipping the front end (implies -fastlex)
+ *   -lazy      parse and check each function body when it is first
+ *              called (implies -tokens; -cache is ignored)
+ *   -parcheck  type check function bodies in parallel
+ *   -frames    resolve each variable to a (depth, slot) address and keep
+ *              variables in frames of slots instead of by name
+ *   -unboxed   keep int, double, bool and char values unboxed in frames
+ *              and evaluate arithmetic on primitives (implies -frames)
+ *   -collect=N collect released frames after every N objects created
+ *              (N >= 0, 0 never collects; implies -frames, not allowed
+ *              with -compile; see Interpreter.setCollection)
+ *   -compile   run the program compiled to closures (ClosureCompiler)
+ *              instead of interpreting it (variables are in frames)
  */
 
 
@@ -12,33 +37,123 @@ import java.io.InputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.HashSet;
+import java.util.Set;
 
 public class HW7 {
 
   public static void main(String[] args) {
-    try {
-      // determine if file or standard in
-      InputStream istream = System.in;
-      if (args.length == 1) {
-        istream = new FileInputStream(new File(args[0]));
+    // split command line into options and the source file name
+    Set<String> options = new HashSet<>();
+    String fileName = null;
+    int collectThreshold = -1;
+    for (String arg : args) {
+      if (arg.startsWith("-collect=")) {
+        String value = arg.substring("-collect=".length());
+        try {
+          collectThreshold = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          collectThreshold = -1;
+        }
+        if (collectThreshold < 0) {
+          System.out.println("Invalid -collect value '" + value
+                             + "' (expected a count >= 0)");
+          System.exit(1);
+        }
       }
+      else if (arg.startsWith("-"))
+        options.add(arg);
+      else
+        fileName = arg;
+    }
+    boolean collect = collectThreshold >= 0;
+    if (collect && options.contains("-compile")) {
+      System.out.println("Option -collect does not apply to -compile");
+      System.exit(1);
+    }
+    try {
       // create the lexer
-      Lexer lexer = new Lexer(istream);
-      // create and run the parser
-      Parser parser = new Parser(lexer);
-      StmtList stmtList = parser.parse();
-      // create and run the type checker
-      TypeChecker typeChecker = new TypeChecker();
-      stmtList.accept(typeChecker);
+      TokenSource lexer = null;
+      boolean lazy = options.contains("-lazy");
+      if (options.contains("-fastlex") || options.contains("-tokens")
+          || options.contains("-parlex") || options.contains("-cache") || lazy) {
+        if (fileName != null)
+          lexer = new FastLexer(new File(fileName));
+        else
+          lexer = new FastLexer(System.in);
+      } else {
+        // determine if file or standard in
+        InputStream istream = System.in;
+        if (fileName != null) {
+          istream = new FileInputStream(new File(fileName));
+        }
+        lexer = new Lexer(istream);
+      }
+      // look for an already checked copy of the program
+      StmtList stmtList = null;
+      ProgramCache cache = null;
+      String cacheKey = null;
+      TypeChecker typeChecker = null;
+      if (options.contains("-cache") && !lazy) {
+        cache = new ProgramCache(new File(ProgramCache.DEFAULT_DIR));
+        cacheKey = ProgramCache.key(((FastLexer)lexer).source(),
+                                    options.contains("-prec") ? "prec" : "");
+        stmtList = cache.load(cacheKey);
+      }
+      if (stmtList == null) {
+        // create and run the parser
+        Parser parser = null;
+        TokenPipe pipe = null;
+        if (options.contains("-parlex"))
+          parser = new Parser(ParallelLexer.tokenize(((FastLexer)lexer).source()));
+        else if (options.contains("-tokens") || lazy)
+          parser = new Parser(TokenStream.tokenize((FastLexer)lexer));
+        else if (options.contains("-pipeline")) {
+          pipe = new TokenPipe(lexer);
+          parser = new Parser(pipe);
+        }
+        else
+          parser = new Parser(lexer);
+        parser.usePrecedence(options.contains("-prec"));
+        parser.useLazyBodies(lazy);
+        long parseStart = System.nanoTime();
+        stmtList = parser.parse();
+        if (pipe != null)
+          System.err.println(pipe.report(System.nanoTime() - parseStart));
+        // create and run the type checker
+        if (options.contains("-parcheck"))
+          typeChecker = ParallelTypeChecker.check(stmtList);
+        else {
+          typeChecker = new TypeChecker();
+          stmtList.accept(typeChecker);
+        }
+        if (cache != null)
+          cache.store(cacheKey, FlatAST.of(stmtList));
+      }
+      if (options.contains("-compile")) {
+        Resolver resolver = new Resolver();
+        stmtList.accept(resolver);
+        int result = new ClosureCompiler(typeChecker, resolver).run(stmtList);
+        System.exit(result);
+      }
       // create and run the interpreter
       Interpreter interpreter = new Interpreter();
+      interpreter.useTypeChecker(typeChecker);
+      if (options.contains("-frames") || options.contains("-unboxed") || collect) {
+        Resolver resolver = new Resolver();
+        stmtList.accept(resolver);
+        interpreter.useFrames(resolver);
+        interpreter.useUnboxed(options.contains("-unboxed"));
+        if (collect)
+          interpreter.setCollection(collectThreshold, Interpreter.DEFAULT_MAX_FREE_FRAMES);
+      }
       int result = interpreter.run(stmtList);
       System.exit(result);
     } catch (MyPLException e) {
       System.out.println(e);
       System.exit(1);
     } catch (FileNotFoundException e) {
-      System.out.println("Unable to open file '" + args[0] + "'");
+      System.out.println("Unable to open file '" + fileName + "'");
       System.exit(1);
     }
      
@@ -4,6 +4,10 @@ import java.util.ArrayList;
 public class IDRValue implements RValue {
 
   public ArrayList<Token> path = new ArrayList<>();
+  public Type type = null;       // set by the type checker
+  public FieldCache fieldCache = null; // made by the interpreter
+  public int depth = -1;          // frame and slot of the variable
+  public int slot = -1;           // (set by the resolver)
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
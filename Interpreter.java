@@ -4,13 +4,21 @@
  * File: Interpreter.java
  *
  * Visitor implementation of a basic "Pure AST" Interpreter for MyPL. 
+ *
+ * The boolean operators short-circuit: the right operand of "and" is
+ * only evaluated if the left one is true, and of "or" if it is false.
+ * An if statement evaluates its elif conditions in order only until
+ * one is true.
+ *
+ * Char values are Characters, whether from a literal or from get().
  */
 
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 
@@ -19,45 +27,136 @@ public class Interpreter implements Visitor {
   private boolean debug_flag = false; // set to false to remove debug comments
   private final SymbolTable symbolTable = new SymbolTable();
   private Object currVal = null;
-  private Map<Integer,Map<String,Object>> heap = new HashMap<>();
+  private TypeChecker typeChecker = null; // checks lazily parsed bodies
+  private Resolver resolver = null; // set when variables live in frames
+  private Frame frame = null;       // the current frame
+  private boolean unboxed = false;  // set when frames keep primitives unboxed
+  // released frames are collected after every collectThreshold objects
+  // created (see setCollection)
+  public static final int DEFAULT_COLLECT_THRESHOLD = 1 << 16;
+  public static final int DEFAULT_MAX_FREE_FRAMES = 256;
+  private int collectThreshold = DEFAULT_COLLECT_THRESHOLD;
+  private int maxFreeFrames = DEFAULT_MAX_FREE_FRAMES;
+  private int newsSinceCollect = 0;
+  private final Set<FunDeclStmt> pooled = new LinkedHashSet<>(); // functions with free frames
+  // set by a return statement (with its value in currVal) until the
+  // enclosing call completes; statements stop running while it is set
+  private boolean returning = false;
   
   
+  /**
+   * Check function bodies left unparsed by the parser (see
+   * Parser.useLazyBodies) with the given type checker, which must be
+   * the one that checked the program, when they are first called.
+   */
+  public void useTypeChecker(final TypeChecker typeChecker) {
+    this.typeChecker = typeChecker;
+  }
+
+
+  /**
+   * Keep variables in frames of slots addressed by the given resolver,
+   * which must have resolved the program, instead of looking them up
+   * by name in the symbol table. Lazily parsed bodies are resolved by
+   * it when they are first called.
+   */
+  public void useFrames(final Resolver resolver) {
+    this.resolver = resolver;
+  }
+
+
+  /**
+   * Keep int, double, bool and char variables unboxed in their frames
+   * (see Frame.prims), and evaluate arithmetic, comparisons, conditions
+   * and loop bounds on primitives, boxing a value only where it is
+   * used as an object (printed, returned, stored in a field). Requires
+   * frames (useFrames) and a type checked program (or one loaded from
+   * the cache, which keeps the checker's types, see FlatAST), as the
+   * static types decide how each variable is stored.
+   */
+  public void useUnboxed(final boolean unboxed) {
+    this.unboxed = unboxed && resolver != null;
+  }
+
+
+  /**
+   * Sets how often released frames are collected, with frames (see
+   * useFrames). After every threshold objects created (never if it is
+   * 0) each function keeps at most maxFreeFrames of its released call
+   * frames, and the slots of all released frames are cleared, so
+   * objects only they still refer to can be reclaimed. Objects are
+   * plain references (see MyPLObject), so nothing else keeps an
+   * unreachable object alive.
+   */
+  public void setCollection(final int threshold, final int maxFreeFrames) {
+    this.collectThreshold = threshold;
+    this.maxFreeFrames = maxFreeFrames;
+  }
+
+
   public Integer run(final StmtList stmtList) throws MyPLException {
     debug("run");
-    try {
-      // evaluate the stmtList
-      stmtList.accept(this);
-      // default return
+    // with frames the symbol table only holds functions and types
+    if (resolver != null)
+      symbolTable.pushEnvironment();
+    // evaluate the stmtList
+    stmtList.accept(this);
+    // default return
+    if (!returning || currVal == null)
       return 0;
-    }catch (MyPLException e) {
-      if (!e.isReturnException())
-        throw e;
-      Object returnVal = e.getReturnValue();
-      if (returnVal == null)
-        return 0;
-      return (Integer)returnVal;
-      }
+    return (Integer)currVal;
   }
 
   
   // visitor functions
   public void visit(final StmtList node) throws MyPLException {
+    if (resolver != null) {
+      // blocks without variables run in the enclosing frame (indexed
+      // loops, so running a block allocates nothing)
+      final ArrayList<Stmt> stmts = node.stmts;
+      if (node.frameSize == 0 && frame != null) {
+        for (int i = 0; i < stmts.size() && !returning; i++)
+          stmts.get(i).accept(this);
+        return;
+      }
+      pushFrame(node.frameSize);
+      for (int i = 0; i < stmts.size() && !returning; i++)
+        stmts.get(i).accept(this);
+      popFrame();
+      return;
+    }
     symbolTable.pushEnvironment();
     for (final Stmt s : node.stmts) {
       s.accept(this);
+      if (returning)
+        break;
     }
     symbolTable.popEnvironment();    
   }
 
   
   public void visit(final VarDeclStmt node) throws MyPLException {  
+    if (unboxed && isPrimitive(node.type) && isTypedOperation(node.varExpr)) {
+      storeTyped(frame, node.slot, node.varExpr);
+      return;
+    }
     node.varExpr.accept(this);
+    if (resolver != null) {
+      store(frame, node.slot, node.type, currVal);
+      return;
+    }
     symbolTable.addName(node.varId.lexeme());
     symbolTable.setInfo(node.varId.lexeme(), currVal);
   }
 
   
   public void visit(final AssignStmt node) throws MyPLException {
+    final LValue lhs = node.lhs;
+    if (unboxed && lhs.path.size() == 1 && isPrimitive(lhs.type)
+        && isTypedOperation(node.rhs)) {
+      storeTyped(frameAt(lhs.depth), lhs.slot, node.rhs);
+      return;
+    }
     // evaluate rhs
     node.rhs.accept(this);
     // let LValue do the assignment
@@ -68,49 +167,75 @@ public class Interpreter implements Visitor {
   public void visit(final ReturnStmt node) throws MyPLException {
     debug("ReturnStmt");
     node.returnExpr.accept(this);
-	  Object returnVal = currVal;
-	  throw new MyPLException(returnVal);
+    // the value is left in currVal for the call
+    returning = true;
   }
 
   
   public void visit(final IfStmt node) throws MyPLException {
     debug("IfStmt");
-    Boolean elif = true;
-    node.ifPart.boolExpr.accept(this);
-    if((boolean)currVal){
+    if(test(node.ifPart.boolExpr)){
       node.ifPart.stmtList.accept(this);
-    }else{
-      for(final BasicIf elseif : node.elsifs) {
-        elseif.boolExpr.accept(this);
-        if((boolean)currVal && elif){
-          elseif.stmtList.accept(this);
-          elif = false;
-        }
-      }
-      if(node.hasElse && elif){
-        node.elseStmtList.accept(this);
+      return;
+    }
+    // the first true elif condition picks the branch
+    for(final BasicIf elseif : node.elsifs) {
+      if(test(elseif.boolExpr)){
+        elseif.stmtList.accept(this);
+        return;
       }
     }
+    if(node.hasElse){
+      node.elseStmtList.accept(this);
+    }
   }
 
   
   public void visit(final WhileStmt node) throws MyPLException {
     debug("WhileStmt");
-    node.boolExpr.accept(this);
-    while((boolean)currVal){
+    while(test(node.boolExpr)){
       node.stmtList.accept(this);
-      node.boolExpr.accept(this);
+      if (returning)
+        return;
     }
   }
   
   public void visit(final ForStmt node) throws MyPLException {
     debug("ForStmt");
+    final int begin;
+    final int end;
+    if (unboxed) {
+      begin = evalInt(node.startExpr);
+      end = evalInt(node.endExpr);
+      forUnboxed(node, begin, end);
+      return;
+    }
     node.startExpr.accept(this);
     final Object start = currVal;
-    final int begin = (Integer)start;
+    begin = (Integer)start;
     node.endExpr.accept(this);
     final Object last = currVal;
-    final int end = (Integer)last;
+    end = (Integer)last;
+    if (resolver != null) {
+      // the loop variable is in the frame of the enclosing block
+      final Frame loopFrame = frame;
+      if(begin > end){
+        for(int i = begin; i > end; i--){
+          loopFrame.slots[node.slot] = i;
+          node.stmtList.accept(this);
+          if (returning)
+            return;
+        }
+      }else{
+        for(int i = begin; i <= end; i++){
+          loopFrame.slots[node.slot] = i;
+          node.stmtList.accept(this);
+          if (returning)
+            return;
+        }
+      }
+      return;
+    }
     symbolTable.addName(node.var.lexeme());
     symbolTable.setInfo(node.var.lexeme(), begin);
 
@@ -118,11 +243,15 @@ public class Interpreter implements Visitor {
       for(int i = begin; i > end; i--){
         symbolTable.setInfo(node.var.lexeme(), i);
         node.stmtList.accept(this);
+        if (returning)
+          return;
       }
     }else{
       for(int i = begin; i <= end; i++){
         symbolTable.setInfo(node.var.lexeme(), i);
         node.stmtList.accept(this);
+        if (returning)
+          return;
       }
     }
   }
@@ -130,14 +259,15 @@ public class Interpreter implements Visitor {
   public void visit(final TypeDeclStmt node) throws MyPLException {
     debug("TypeDeclStmt");
     symbolTable.addName(node.typeId.lexeme());
-    symbolTable.setInfo(node.typeId.lexeme(), List.of(symbolTable.getEnvironmentId(), node));
+    symbolTable.setInfo(node.typeId.lexeme(), List.of(currentScope(), node));
   }
 
 
   public void visit(final FunDeclStmt node) throws MyPLException {
     debug("FunDeclStmt");
+    node.declScope = currentScope();
     symbolTable.addName(node.funName.lexeme());
-    symbolTable.setInfo(node.funName.lexeme(), List.of(symbolTable.getEnvironmentId(), node));
+    symbolTable.setInfo(node.funName.lexeme(), List.of(node.declScope, node));
   }
 
   
@@ -145,128 +275,15 @@ public class Interpreter implements Visitor {
   
   public void visit(final Expr node) throws MyPLException {
     debug("Expr");
-    // The following is a basic sketch of what you need to
-    // implement. You will need to fill in the remaining code to get
-    // Expr working.
-     
     node.first.accept(this);
     final Object firstVal = currVal;
     
-    if (node.operator != null) {
+    if (node.operator != null && !shortCircuits(firstVal, node.operator)) {
       node.rest.accept(this);
-      final Object restVal = currVal;
-      final String op = node.operator.lexeme();
-
-      // Check for null values (all except == and !=)
-      // if you find a null value report an error
-
-      // basic math ops (+, -, *, /, %)
-      if (op.equals("+")) {
-        if (firstVal instanceof Integer)
-          currVal = (Integer)firstVal + (Integer)restVal;
-        else 
-          currVal = (Double)firstVal + (Double)restVal;
-      }
-      else if (op.equals("-")) {
-        if(firstVal instanceof Integer)
-          currVal = (Integer)firstVal - (Integer)restVal;
-        else
-          currVal = (Double)firstVal - (Double)restVal;
-      }
-      else if (op.equals("*")) {
-        if(firstVal instanceof Integer)
-          currVal = (Integer)firstVal * (Integer)restVal;
-        else
-          currVal = (Double)firstVal * (Double)restVal;
-      }
-      else if (op.equals("/")) {
-        if(firstVal instanceof Integer && (Integer)restVal != 0)
-          currVal = (Integer)firstVal / (Integer)restVal;
-        else if(firstVal instanceof Double && (Double)restVal != 0){
-          currVal = (Double)firstVal / (Double)restVal;
-        }else{
-          error("Can't divide by 0", node.operator);
-        }
-      }
-      else if (op.equals("%")) {
-        if(firstVal instanceof Integer && (Integer)restVal != 0){
-          currVal = (Integer)firstVal % (Integer)restVal;
-        }
-        else if(firstVal instanceof Double && (Double)restVal != 0)
-          currVal = (Double)firstVal % (Double)restVal;
-        else
-          error("Can't mod by 0", node.operator);
-      }
-      // boolean operators (and, or)
-      else if (op.equals("and")) {
-        currVal = (Boolean)firstVal && (Boolean)restVal;
-      }
-      else if (op.equals("or")) {
-        currVal = (Boolean)firstVal || (Boolean)restVal;
-      }
-      // relational comparators (=, !=, <, >, <=, >=)
-      else if (op.equals("=")) {
-        if(restVal != null){
-          if(firstVal.equals(restVal)){
-            currVal = true;
-          }else{
-            currVal = false;
-          }
-        }else{
-          if(firstVal == null){
-            currVal = true;
-          }else{
-            currVal = false;
-          }
-        }
-      }
-      else if (op.equals("!=")){
-        if(restVal != null){
-          if(firstVal.equals(restVal)){
-            currVal = false;
-          }else{
-            currVal = true;
-          }
-       }else{
-         if(firstVal == null){
-           currVal = false;
-         }else{
-           currVal = true;
-         }
-       }
-      }
-      else if (op.equals("<")) {
-        if (firstVal instanceof Integer)
-          currVal = (Integer)firstVal < (Integer)restVal;
-        else if (firstVal instanceof Double)
-          currVal = (Double)firstVal < (Double)restVal;
-        else
-          currVal = ((String)firstVal).compareTo((String)restVal) < 0;
-      }
-      else if (op.equals("<=")) {
-        if (firstVal instanceof Integer)
-          currVal = (Integer)firstVal <= (Integer)restVal;
-        else if (firstVal instanceof Double)
-          currVal = (Double)firstVal <= (Double)restVal;
-        else
-          currVal = ((String)firstVal).compareTo((String)restVal) <= 0;
-      }
-      else if (op.equals(">")) {
-        if (firstVal instanceof Integer)
-          currVal = (Integer)firstVal > (Integer)restVal;
-        else if (firstVal instanceof Double)
-          currVal = (Double)firstVal > (Double)restVal;
-        else
-          currVal = ((String)firstVal).compareTo((String)restVal) > 0;
-      }
-      else if (op.equals(">=")) {
-        if (firstVal instanceof Integer)
-          currVal = (Integer)firstVal >= (Integer)restVal;
-        else if (firstVal instanceof Double)
-          currVal = (Double)firstVal >= (Double)restVal;
-        else
-          currVal = ((String)firstVal).compareTo((String)restVal) >= 0;
-      }
+      if (node.operation != null)
+        currVal = applyOperation(node.operation, firstVal, node.operator, currVal);
+      else
+        currVal = applyOperator(firstVal, node.operator, currVal);
     }
     // deal with not operator
     if (node.negated){
@@ -277,18 +294,60 @@ public class Interpreter implements Visitor {
   }
 
 
+  public void visit(final BinaryExpr node) throws MyPLException {
+    debug("BinaryExpr");
+    // walk the left spine iteratively (innermost lhs first) so long
+    // left associative chains don't recurse once per operator
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr)
+      bottom = (BinaryExpr)bottom.lhs;
+    bottom.lhs.accept(this);
+    Object lhsVal = currVal;
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      if (!shortCircuits(lhsVal, curr.operator)) {
+        curr.rhs.accept(this);
+        if (curr.operation != null)
+          lhsVal = applyOperation(curr.operation, lhsVal, curr.operator, currVal);
+        else
+          lhsVal = applyOperator(lhsVal, curr.operator, currVal);
+      }
+      if (curr == node)
+        break;
+    }
+    currVal = lhsVal;
+  }
+
+
+  public void visit(final UnaryExpr node) throws MyPLException {
+    debug("UnaryExpr");
+    node.operand.accept(this);
+    if (node.operator.type() == TokenType.NOT) {
+      if (currVal instanceof Boolean)
+        currVal = !(Boolean)currVal;
+    }
+    else if (currVal instanceof Integer)
+      currVal = -(Integer)currVal;
+    else
+      currVal = -(Double)currVal;
+  }
+
+
   public void visit(final LValue node) throws MyPLException {
     String varName = node.path.get(0).lexeme();
   	if(node.path.size() > 1){
-		  Map<String, Object> obj = (Map<String, Object>)heap.get((Integer)symbolTable.getInfo(varName));
+      final Object root = resolver != null ? frameAt(node.depth).slots[node.slot]
+                                           : symbolTable.getInfo(varName);
+		  if (node.fieldCache == null)
+		    node.fieldCache = new FieldCache(node.path);
+		  final FieldCache cache = node.fieldCache;
+		  MyPLObject obj = (MyPLObject)root;
 		  for(int i = 1; i < node.path.size() - 1; i++){
-			  varName = node.path.get(i).lexeme();
-			  int oid = (Integer)obj.get(varName);
-			  obj = (Map<String, Object>)heap.get(oid); 
+			  obj = (MyPLObject)cache.get(obj, i);
 		  }
-		  varName = node.path.get(node.path.size() - 1).lexeme();
-		  obj.replace(varName, currVal);
-	  }else{
+		  cache.set(obj, node.path.size() - 1, currVal);
+	  }else if (resolver != null){
+      store(frameAt(node.depth), node.slot, node.type, currVal);
+    }else{
       symbolTable.setInfo(varName, currVal);
     }
   }
@@ -305,74 +364,94 @@ public class Interpreter implements Visitor {
 
   
   public void visit(final SimpleRValue node) throws MyPLException {
-    if (node.val.type() == TokenType.INT_VAL)
-      currVal = Integer.parseInt(node.val.lexeme());
-    else if (node.val.type() == TokenType.DOUBLE_VAL)
-      currVal = Double.parseDouble(node.val.lexeme());
-    else if (node.val.type() == TokenType.BOOL_VAL)
-      currVal = Boolean.parseBoolean(node.val.lexeme());
-    else if (node.val.type() == TokenType.CHAR_VAL)
-      currVal = node.val.lexeme(); // leave as single character string
-    else if (node.val.type() == TokenType.STRING_VAL)
-      currVal = node.val.lexeme();
-    else if (node.val.type() == TokenType.NIL)
-      currVal = null;
+    currVal = literalValue(node.val);
+  }
+
+
+  /**
+   * The value of a literal.
+   */
+  public static Object literalValue(final Token val) {
+    if (val.type() == TokenType.INT_VAL)
+      return Integer.parseInt(val.lexeme());
+    else if (val.type() == TokenType.DOUBLE_VAL)
+      return Double.parseDouble(val.lexeme());
+    else if (val.type() == TokenType.BOOL_VAL)
+      return Boolean.parseBoolean(val.lexeme());
+    else if (val.type() == TokenType.CHAR_VAL)
+      return val.lexeme().charAt(0);
+    else if (val.type() == TokenType.STRING_VAL)
+      return val.lexeme();
+    return null; // NIL
   }
 
   
   public void visit(final NewRValue node) throws MyPLException {
     debug("NewRValue");
     List<Object> typeInfo = (List<Object>)symbolTable.getInfo(node.typeId.lexeme());
-	  int currEnv = symbolTable.getEnvironmentId();
-	  symbolTable.setEnvironmentId((int)typeInfo.get(0));
-	  Map<String,Object> obj = new HashMap<>();
-	  int oid = System.identityHashCode(obj);
+    if (resolver != null) {
+      newInFrame(node, typeInfo);
+      return;
+    }
+	  MyPLObject obj = new MyPLObject(Shape.of((TypeDeclStmt)typeInfo.get(1)));
+	  if (obj.shape.allConstant) {
+	    currVal = obj;
+	    return;
+	  }
+	  SymbolTable.Environment currEnv = symbolTable.getEnvironment();
+	  symbolTable.setEnvironment((SymbolTable.Environment)typeInfo.get(0));
 	  symbolTable.pushEnvironment();
-	  for(VarDeclStmt varDecl : ((TypeDeclStmt)(typeInfo.get(1))).fields) {
+	  //fields with literal initializers already have their values, but
+	  //the other initializers may refer to them
+	  for(int i = 0; i < obj.fields.length; i++) {
+	    VarDeclStmt varDecl = obj.shape.decl.fields.get(i);
+	    if (obj.shape.constant[i]) {
+	      symbolTable.addName(varDecl.varId.lexeme());
+	      symbolTable.setInfo(varDecl.varId.lexeme(), obj.fields[i]);
+	      continue;
+	    }
 		  varDecl.accept(this);
-		  obj.put(varDecl.varId.lexeme(), currVal);
+		  obj.fields[i] = currVal;
 	  }
 	  symbolTable.popEnvironment();
-	  symbolTable.setEnvironmentId(currEnv);
-	  heap.put(oid, obj);
-  	currVal = oid;
+	  symbolTable.setEnvironment(currEnv);
+  	currVal = obj;
   }
 
 
   public void visit(final CallRValue node) throws MyPLException {
     debug("CallRValue");
-    final List<String> builtIns = List.of("print", "read", "length", "get",
-                                    "concat", "append", "itos", "stoi",
-                                    "dtos", "stod");
-    final String funName = node.funName.lexeme();
-    if (builtIns.contains(funName)){
+    // each call is bound to its function the first time it runs
+    // (functions are global and can't be declared again)
+    if (node.builtIn == null && node.target == null)
+      bind(node);
+    if (node.builtIn != null){
       callBuiltInFun(node);
     }else{
+      FunDeclStmt funDecl = node.target;
+      if (funDecl.bodyParser != null)
+        loadBody(funDecl);
+      if (resolver != null) {
+        callInFrame(node, funDecl, (Frame)funDecl.declScope);
+        return;
+      }
       List<Object> argumentVals = new ArrayList<>();
-      List<Object> functionVals = (List<Object>)symbolTable.getInfo(funName);
-      int currentEnv = symbolTable.getEnvironmentId();
+      SymbolTable.Environment currentEnv = symbolTable.getEnvironment();
       for(Expr argument : node.argList) { //
         argument.accept(this);
         argumentVals.add(currVal);
       }
-      symbolTable.setEnvironmentId((Integer)functionVals.get(0));
+      symbolTable.setEnvironment((SymbolTable.Environment)funDecl.declScope);
       symbolTable.pushEnvironment();
-      ArrayList<FunParam> funParams = ((FunDeclStmt)(functionVals.get(1))).params;
+      ArrayList<FunParam> funParams = funDecl.params;
       for(int i = 0; i < funParams.size(); i++){ //while not at the end of the size
         symbolTable.addName(((funParams.get(i)).paramName).lexeme());
         symbolTable.setInfo(((funParams.get(i)).paramName).lexeme(), argumentVals.get(i));
       }
-      StmtList funStmtList = ((FunDeclStmt)(functionVals.get(1))).stmtList;
-      try {
-        ((FunDeclStmt)(functionVals.get(1))).stmtList.accept(this);
-      }catch (MyPLException e) {
-        if (!e.isReturnException()){
-          throw e;
-        }
-        currVal = e.getReturnValue();
-      }
+      funDecl.stmtList.accept(this);
+      returning = false;
       symbolTable.popEnvironment();
-      symbolTable.setEnvironmentId(currentEnv);
+      symbolTable.setEnvironment(currentEnv);
     }
   }
 
@@ -380,14 +459,18 @@ public class Interpreter implements Visitor {
   public void visit(final IDRValue node) throws MyPLException {
     String varName = node.path.get(0).lexeme();
     if(node.path.size() > 1){ //if path is larger that 1
-      Map<String, Object> obj = (Map<String, Object>)heap.get((Integer)symbolTable.getInfo(varName));
+      final Object root = resolver != null ? frameAt(node.depth).slots[node.slot]
+                                           : symbolTable.getInfo(varName);
+      if (node.fieldCache == null)
+        node.fieldCache = new FieldCache(node.path);
+      final FieldCache cache = node.fieldCache;
+      MyPLObject obj = (MyPLObject)root;
       for(int i = 1; i < node.path.size() - 1; i++){ // while not at the end of the node size, minus one becasue return value
-        varName = node.path.get(i).lexeme();
-        int oid = (Integer)obj.get(varName);
-        obj = (Map<String, Object>)heap.get(oid); 
+        obj = (MyPLObject)cache.get(obj, i);
       }
-      varName = node.path.get(node.path.size() - 1).lexeme();
-      currVal = obj.get(varName);
+      currVal = cache.get(obj, node.path.size() - 1);
+    }else if (resolver != null){
+      currVal = load(frameAt(node.depth), node.slot, node.type);
     }else{
       currVal = symbolTable.getInfo(varName);
     }
@@ -407,8 +490,670 @@ public class Interpreter implements Visitor {
   //------------------
 
   
+  // whether the given operator's value is its left operand's (false
+  // for "and", true for "or"), without evaluating the right operand
+  static boolean shortCircuits(final Object firstVal, final Token operator) {
+    if (operator.type() == TokenType.AND)
+      return Boolean.FALSE.equals(firstVal);
+    if (operator.type() == TokenType.OR)
+      return Boolean.TRUE.equals(firstVal);
+    return false;
+  }
+
+
+  // applies an operation lowered by the type checker to its evaluated
+  // operands, with the same results and errors as applyOperator
+  static Object applyOperation(final Operation operation, final Object firstVal,
+                                final Token operator, final Object restVal)
+      throws MyPLException {
+    switch (operation) {
+    case INT_ADD: return (Integer)firstVal + (Integer)restVal;
+    case INT_SUB: return (Integer)firstVal - (Integer)restVal;
+    case INT_MUL: return (Integer)firstVal * (Integer)restVal;
+    case INT_DIV:
+      if (firstVal == null || (Integer)restVal == 0)
+        error("Can't divide by 0", operator);
+      return (Integer)firstVal / (Integer)restVal;
+    case INT_MOD:
+      if (firstVal == null || (Integer)restVal == 0)
+        error("Can't mod by 0", operator);
+      return (Integer)firstVal % (Integer)restVal;
+    case INT_LESS: return (Integer)firstVal < (Integer)restVal;
+    case INT_LESS_EQUAL: return (Integer)firstVal <= (Integer)restVal;
+    case INT_GREATER: return (Integer)firstVal > (Integer)restVal;
+    case INT_GREATER_EQUAL: return (Integer)firstVal >= (Integer)restVal;
+    case DOUBLE_ADD: return (Double)firstVal + (Double)restVal;
+    case DOUBLE_SUB: return (Double)firstVal - (Double)restVal;
+    case DOUBLE_MUL: return (Double)firstVal * (Double)restVal;
+    case DOUBLE_DIV:
+      if (firstVal == null || (Double)restVal == 0)
+        error("Can't divide by 0", operator);
+      return (Double)firstVal / (Double)restVal;
+    case DOUBLE_LESS: return (Double)firstVal < (Double)restVal;
+    case DOUBLE_LESS_EQUAL: return (Double)firstVal <= (Double)restVal;
+    case DOUBLE_GREATER: return (Double)firstVal > (Double)restVal;
+    case DOUBLE_GREATER_EQUAL: return (Double)firstVal >= (Double)restVal;
+    case AND: return (Boolean)firstVal && (Boolean)restVal;
+    case OR: return (Boolean)firstVal || (Boolean)restVal;
+    case EQUAL: return valuesEqual(firstVal, restVal);
+    default: return !valuesEqual(firstVal, restVal); // NOT_EQUAL
+    }
+  }
+
+
+  // whether two values are equal under the = operator
+  static boolean valuesEqual(final Object firstVal, final Object restVal) {
+    if (restVal != null)
+      return firstVal.equals(restVal);
+    return firstVal == null;
+  }
+
+
+  // applies a binary operator to its evaluated operands
+  static Object applyOperator(final Object firstVal, final Token operator, final Object restVal)
+      throws MyPLException {
+    final String op = operator.lexeme();
+    Object result = null;
+
+    // Check for null values (all except == and !=)
+    // if you find a null value report an error
+
+    // basic math ops (+, -, *, /, %)
+    if (op.equals("+")) {
+      if (firstVal instanceof Integer)
+        result = (Integer)firstVal + (Integer)restVal;
+      else 
+        result = (Double)firstVal + (Double)restVal;
+    }
+    else if (op.equals("-")) {
+      if(firstVal instanceof Integer)
+        result = (Integer)firstVal - (Integer)restVal;
+      else
+        result = (Double)firstVal - (Double)restVal;
+    }
+    else if (op.equals("*")) {
+      if(firstVal instanceof Integer)
+        result = (Integer)firstVal * (Integer)restVal;
+      else
+        result = (Double)firstVal * (Double)restVal;
+    }
+    else if (op.equals("/")) {
+      if(firstVal instanceof Integer && (Integer)restVal != 0)
+        result = (Integer)firstVal / (Integer)restVal;
+      else if(firstVal instanceof Double && (Double)restVal != 0){
+        result = (Double)firstVal / (Double)restVal;
+      }else{
+        error("Can't divide by 0", operator);
+      }
+    }
+    else if (op.equals("%")) {
+      if(firstVal instanceof Integer && (Integer)restVal != 0){
+        result = (Integer)firstVal % (Integer)restVal;
+      }
+      else if(firstVal instanceof Double && (Double)restVal != 0)
+        result = (Double)firstVal % (Double)restVal;
+      else
+        error("Can't mod by 0", operator);
+    }
+    // boolean operators (and, or)
+    else if (op.equals("and")) {
+      result = (Boolean)firstVal && (Boolean)restVal;
+    }
+    else if (op.equals("or")) {
+      result = (Boolean)firstVal || (Boolean)restVal;
+    }
+    // relational comparators (=, !=, <, >, <=, >=)
+    else if (op.equals("=")) {
+      result = valuesEqual(firstVal, restVal);
+    }
+    else if (op.equals("!=")){
+      result = !valuesEqual(firstVal, restVal);
+    }
+    else if (op.equals("<")) {
+      if (firstVal instanceof Integer)
+        result = (Integer)firstVal < (Integer)restVal;
+      else if (firstVal instanceof Double)
+        result = (Double)firstVal < (Double)restVal;
+      else
+        result = ((String)firstVal).compareTo((String)restVal) < 0;
+    }
+    else if (op.equals("<=")) {
+      if (firstVal instanceof Integer)
+        result = (Integer)firstVal <= (Integer)restVal;
+      else if (firstVal instanceof Double)
+        result = (Double)firstVal <= (Double)restVal;
+      else
+        result = ((String)firstVal).compareTo((String)restVal) <= 0;
+    }
+    else if (op.equals(">")) {
+      if (firstVal instanceof Integer)
+        result = (Integer)firstVal > (Integer)restVal;
+      else if (firstVal instanceof Double)
+        result = (Double)firstVal > (Double)restVal;
+      else
+        result = ((String)firstVal).compareTo((String)restVal) > 0;
+    }
+    else if (op.equals(">=")) {
+      if (firstVal instanceof Integer)
+        result = (Integer)firstVal >= (Integer)restVal;
+      else if (firstVal instanceof Double)
+        result = (Double)firstVal >= (Double)restVal;
+      else
+        result = ((String)firstVal).compareTo((String)restVal) >= 0;
+    }
+    return result;
+  }
+
+  
+  // binds a call to the built-in or user function of its name
+  private void bind(final CallRValue node) {
+    node.builtIn = BuiltIn.of(node.funName.lexeme());
+    if (node.builtIn == null)
+      node.target = (FunDeclStmt)((List<Object>)symbolTable.getInfo(node.funName.lexeme())).get(1);
+  }
+
+
+  // parses and checks a function body left unparsed until first call
+  private void loadBody(final FunDeclStmt node) throws MyPLException {
+    debug("loadBody");
+    node.bodyParser.parseBody(node);
+    if (typeChecker != null)
+      typeChecker.checkBody(node);
+    if (resolver != null)
+      resolver.resolveBody(node);
+  }
+
+
+  // the scope functions and types are declared in: the current frame
+  // or symbol table environment
+  private Object currentScope() {
+    if (resolver != null)
+      return frame;
+    return symbolTable.getEnvironment();
+  }
+
+
+  // the frame the given number of levels up from the current frame
+  private Frame frameAt(int depth) {
+    Frame f = frame;
+    while (depth-- > 0)
+      f = f.parent;
+    return f;
+  }
+
+
+  // makes a frame of (at least) the given size the current frame,
+  // reusing the last frame released from the current frame if it is
+  // big enough
+  private void pushFrame(final int size) {
+    Frame child = frame != null ? frame.spare : null;
+    if (child != null && child.slots.length >= size)
+      frame.spare = null;
+    else
+      child = new Frame(frame, size, unboxed);
+    frame = child;
+  }
+
+
+  // returns to the parent frame, keeping the current frame for reuse
+  private void popFrame() {
+    if (frame.parent != null)
+      frame.parent.spare = frame;
+    frame = frame.parent;
+  }
+
+
+  // whether variables of the given type are kept unboxed
+  private static boolean isPrimitive(final Type type) {
+    return type == Type.INT || type == Type.DOUBLE || type == Type.BOOL
+      || type == Type.CHAR;
+  }
+
+
+  // stores a value in a frame slot, unboxed if the variable's type is
+  // kept unboxed
+  private void store(final Frame f, final int slot, final Type type, final Object value) {
+    if (!unboxed || !isPrimitive(type) || value == null) {
+      f.slots[slot] = value;
+      return;
+    }
+    if (type == Type.INT)
+      f.prims[slot] = (Integer)value;
+    else if (type == Type.DOUBLE)
+      f.prims[slot] = Double.doubleToRawLongBits((Double)value);
+    else if (type == Type.BOOL)
+      f.prims[slot] = (Boolean)value ? 1 : 0;
+    else
+      f.prims[slot] = (Character)value;
+    f.slots[slot] = Frame.UNBOXED;
+  }
+
+
+  // the value in a frame slot, boxed if it is kept unboxed
+  private Object load(final Frame f, final int slot, final Type type) {
+    final Object value = f.slots[slot];
+    if (value != Frame.UNBOXED)
+      return value;
+    final long bits = f.prims[slot];
+    if (type == Type.INT)
+      return (int)bits;
+    if (type == Type.DOUBLE)
+      return Double.longBitsToDouble(bits);
+    if (type == Type.BOOL)
+      return bits != 0;
+    return (char)bits;
+  }
+
+
+  // the raw bits of a variable kept unboxed, whose value can't be nil
+  // where it is read this way (as in the boxed evaluation, nil fails)
+  private long prim(final IDRValue node) {
+    final Frame f = frameAt(node.depth);
+    if (f.slots[node.slot] != Frame.UNBOXED)
+      throw new NullPointerException("nil value");
+    return f.prims[node.slot];
+  }
+
+
+  // whether the given rvalue reads a variable of the given type kept
+  // unboxed
+  private static boolean isVariable(final RValue rvalue, final Type type) {
+    return rvalue instanceof IDRValue && ((IDRValue)rvalue).path.size() == 1
+      && ((IDRValue)rvalue).type == type;
+  }
+
+
+  // whether the value of the given expression is computed by a typed
+  // arithmetic or comparison (or boolean) operation, so it is never nil
+  // and can be evaluated unboxed
+  private static boolean isTypedOperation(final Expr node) {
+    Operation operation = node.operation;
+    if (node.operator == null)
+      operation = node.first instanceof BinaryExpr ? ((BinaryExpr)node.first).operation : null;
+    return operation != null && operation != Operation.EQUAL
+      && operation != Operation.NOT_EQUAL;
+  }
+
+
+  // evaluates a typed operation (see isTypedOperation) into a frame
+  // slot without boxing its value
+  private void storeTyped(final Frame f, final int slot, final Expr node)
+      throws MyPLException {
+    final long bits;
+    if (node.type == Type.INT)
+      bits = evalInt(node);
+    else if (node.type == Type.DOUBLE)
+      bits = Double.doubleToRawLongBits(evalDouble(node));
+    else
+      bits = evalBool(node) ? 1 : 0;
+    f.prims[slot] = bits;
+    f.slots[slot] = Frame.UNBOXED;
+  }
+
+
+  // evaluates a condition
+  private boolean test(final Expr node) throws MyPLException {
+    if (unboxed)
+      return evalBool(node);
+    node.accept(this);
+    return (boolean)currVal;
+  }
+
+
+  // runs a for loop whose variable is kept unboxed in the frame of the
+  // enclosing block
+  private void forUnboxed(final ForStmt node, final int begin, final int end)
+      throws MyPLException {
+    final Frame loopFrame = frame;
+    final int step = begin > end ? -1 : 1;
+    for (int i = begin; step > 0 ? i <= end : i > end; i += step) {
+      loopFrame.prims[node.slot] = i;
+      loopFrame.slots[node.slot] = Frame.UNBOXED;
+      node.stmtList.accept(this);
+      if (returning)
+        return;
+    }
+  }
+
+
+  // evaluates an int expression without boxing
+  private int evalInt(final Expr node) throws MyPLException {
+    if (node.operator == null)
+      return evalInt(node.first);
+    if (node.operation == null || !node.operation.isIntArithmetic()) {
+      node.accept(this);
+      return (Integer)currVal;
+    }
+    final int firstVal = evalInt(node.first);
+    return intOp(node.operation, firstVal, evalInt(node.rest), node.operator);
+  }
+
+
+  private int evalInt(final ExprTerm term) throws MyPLException {
+    if (term instanceof BinaryExpr)
+      return evalInt((BinaryExpr)term);
+    if (term instanceof ComplexTerm)
+      return evalInt(((ComplexTerm)term).expr);
+    if (term instanceof SimpleTerm) {
+      final RValue rvalue = ((SimpleTerm)term).rvalue;
+      if (isVariable(rvalue, Type.INT))
+        return (int)prim((IDRValue)rvalue);
+      if (rvalue instanceof SimpleRValue && ((SimpleRValue)rvalue).val.type() == TokenType.INT_VAL)
+        return Integer.parseInt(((SimpleRValue)rvalue).val.lexeme());
+      if (rvalue instanceof NegatedRValue)
+        return -evalInt(((NegatedRValue)rvalue).expr);
+    }
+    else if (term instanceof UnaryExpr && ((UnaryExpr)term).operator.type() != TokenType.NOT)
+      return -evalInt(((UnaryExpr)term).operand);
+    term.accept(this);
+    return (Integer)currVal;
+  }
+
+
+  // evaluates a chain of int operations along the left spine
+  private int evalInt(final BinaryExpr node) throws MyPLException {
+    if (node.operation == null || !node.operation.isIntArithmetic()) {
+      node.accept(this);
+      return (Integer)currVal;
+    }
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr && ((BinaryExpr)bottom.lhs).operation != null
+           && ((BinaryExpr)bottom.lhs).operation.isIntArithmetic())
+      bottom = (BinaryExpr)bottom.lhs;
+    int lhsVal = evalInt(bottom.lhs);
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      lhsVal = intOp(curr.operation, lhsVal, evalInt(curr.rhs), curr.operator);
+      if (curr == node)
+        return lhsVal;
+    }
+  }
+
+
+  private int intOp(final Operation operation, final int firstVal, final int restVal,
+                    final Token operator) throws MyPLException {
+    switch (operation) {
+    case INT_ADD: return firstVal + restVal;
+    case INT_SUB: return firstVal - restVal;
+    case INT_MUL: return firstVal * restVal;
+    case INT_DIV:
+      if (restVal == 0)
+        error("Can't divide by 0", operator);
+      return firstVal / restVal;
+    default: // INT_MOD
+      if (restVal == 0)
+        error("Can't mod by 0", operator);
+      return firstVal % restVal;
+    }
+  }
+
+
+  // evaluates a double expression without boxing
+  private double evalDouble(final Expr node) throws MyPLException {
+    if (node.operator == null)
+      return evalDouble(node.first);
+    if (node.operation == null || !node.operation.isDoubleArithmetic()) {
+      node.accept(this);
+      return (Double)currVal;
+    }
+    final double firstVal = evalDouble(node.first);
+    return doubleOp(node.operation, firstVal, evalDouble(node.rest), node.operator);
+  }
+
+
+  private double evalDouble(final ExprTerm term) throws MyPLException {
+    if (term instanceof BinaryExpr)
+      return evalDouble((BinaryExpr)term);
+    if (term instanceof ComplexTerm)
+      return evalDouble(((ComplexTerm)term).expr);
+    if (term instanceof SimpleTerm) {
+      final RValue rvalue = ((SimpleTerm)term).rvalue;
+      if (isVariable(rvalue, Type.DOUBLE))
+        return Double.longBitsToDouble(prim((IDRValue)rvalue));
+      if (rvalue instanceof SimpleRValue && ((SimpleRValue)rvalue).val.type() == TokenType.DOUBLE_VAL)
+        return doubleLiteral((SimpleRValue)rvalue);
+      if (rvalue instanceof NegatedRValue)
+        return -evalDouble(((NegatedRValue)rvalue).expr);
+    }
+    else if (term instanceof UnaryExpr && ((UnaryExpr)term).operator.type() != TokenType.NOT)
+      return -evalDouble(((UnaryExpr)term).operand);
+    term.accept(this);
+    return (Double)currVal;
+  }
+
+
+  // evaluates a chain of double operations along the left spine
+  private double evalDouble(final BinaryExpr node) throws MyPLException {
+    if (node.operation == null || !node.operation.isDoubleArithmetic()) {
+      node.accept(this);
+      return (Double)currVal;
+    }
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr && ((BinaryExpr)bottom.lhs).operation != null
+           && ((BinaryExpr)bottom.lhs).operation.isDoubleArithmetic())
+      bottom = (BinaryExpr)bottom.lhs;
+    double lhsVal = evalDouble(bottom.lhs);
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      lhsVal = doubleOp(curr.operation, lhsVal, evalDouble(curr.rhs), curr.operator);
+      if (curr == node)
+        return lhsVal;
+    }
+  }
+
+
+  // the value of a double literal (parsing allocates, so it is kept)
+  private static double doubleLiteral(final SimpleRValue node) {
+    if (node.doubleVal == null)
+      node.doubleVal = Double.parseDouble(node.val.lexeme());
+    return node.doubleVal;
+  }
+
+
+  private double doubleOp(final Operation operation, final double firstVal,
+                          final double restVal, final Token operator) throws MyPLException {
+    switch (operation) {
+    case DOUBLE_ADD: return firstVal + restVal;
+    case DOUBLE_SUB: return firstVal - restVal;
+    case DOUBLE_MUL: return firstVal * restVal;
+    default: // DOUBLE_DIV
+      if (restVal == 0)
+        error("Can't divide by 0", operator);
+      return firstVal / restVal;
+    }
+  }
+
+
+  // evaluates a bool expression without boxing, short-circuiting "and"
+  // and "or" as the boxed evaluation does
+  private boolean evalBool(final Expr node) throws MyPLException {
+    final Operation operation = node.operation;
+    boolean result;
+    if (node.operator == null)
+      result = evalBool(node.first);
+    else if (operation == null || operation == Operation.EQUAL
+             || operation == Operation.NOT_EQUAL) {
+      node.accept(this); // negates the value itself
+      return (Boolean)currVal;
+    }
+    else if (operation.isIntComparison())
+      result = compare(operation, evalInt(node.first), evalInt(node.rest));
+    else if (operation.isDoubleComparison())
+      result = compare(operation, evalDouble(node.first), evalDouble(node.rest));
+    else if (operation == Operation.AND)
+      result = evalBool(node.first) && evalBool(node.rest);
+    else
+      result = evalBool(node.first) || evalBool(node.rest);
+    return node.negated ? !result : result;
+  }
+
+
+  private boolean evalBool(final ExprTerm term) throws MyPLException {
+    if (term instanceof BinaryExpr) {
+      final BinaryExpr node = (BinaryExpr)term;
+      final Operation operation = node.operation;
+      if (operation != null && operation.isIntComparison())
+        return compare(operation, evalInt(node.lhs), evalInt(node.rhs));
+      if (operation != null && operation.isDoubleComparison())
+        return compare(operation, evalDouble(node.lhs), evalDouble(node.rhs));
+      if (operation == Operation.AND || operation == Operation.OR)
+        return evalLogic(node);
+    }
+    else if (term instanceof ComplexTerm)
+      return evalBool(((ComplexTerm)term).expr);
+    else if (term instanceof SimpleTerm) {
+      final RValue rvalue = ((SimpleTerm)term).rvalue;
+      if (isVariable(rvalue, Type.BOOL))
+        return prim((IDRValue)rvalue) != 0;
+      if (rvalue instanceof SimpleRValue && ((SimpleRValue)rvalue).val.type() == TokenType.BOOL_VAL)
+        return Boolean.parseBoolean(((SimpleRValue)rvalue).val.lexeme());
+    }
+    else if (term instanceof UnaryExpr && ((UnaryExpr)term).operator.type() == TokenType.NOT)
+      return !evalBool(((UnaryExpr)term).operand);
+    term.accept(this);
+    return (Boolean)currVal;
+  }
+
+
+  // evaluates a chain of "and" and "or" along the left spine
+  private boolean evalLogic(final BinaryExpr node) throws MyPLException {
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr
+           && (((BinaryExpr)bottom.lhs).operation == Operation.AND
+               || ((BinaryExpr)bottom.lhs).operation == Operation.OR))
+      bottom = (BinaryExpr)bottom.lhs;
+    boolean lhsVal = evalBool(bottom.lhs);
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      if (curr.operation == Operation.AND)
+        lhsVal = lhsVal && evalBool(curr.rhs);
+      else
+        lhsVal = lhsVal || evalBool(curr.rhs);
+      if (curr == node)
+        return lhsVal;
+    }
+  }
+
+
+  private static boolean compare(final Operation operation, final int firstVal,
+                                 final int restVal) {
+    switch (operation) {
+    case INT_LESS: return firstVal < restVal;
+    case INT_LESS_EQUAL: return firstVal <= restVal;
+    case INT_GREATER: return firstVal > restVal;
+    default: return firstVal >= restVal; // INT_GREATER_EQUAL
+    }
+  }
+
+
+  private static boolean compare(final Operation operation, final double firstVal,
+                                 final double restVal) {
+    switch (operation) {
+    case DOUBLE_LESS: return firstVal < restVal;
+    case DOUBLE_LESS_EQUAL: return firstVal <= restVal;
+    case DOUBLE_GREATER: return firstVal > restVal;
+    default: return firstVal >= restVal; // DOUBLE_GREATER_EQUAL
+    }
+  }
+
+
+  // trims the functions' free lists and clears the slots of the
+  // released frames: those in the free lists and the released blocks
+  // kept by them and by the running frames (reached through the
+  // enclosing frames of blocks and the callers of calls)
+  private void collect() {
+    newsSinceCollect = 0;
+    for (final FunDeclStmt funDecl : pooled) {
+      Frame last = null;
+      int kept = 0;
+      for (Frame f = funDecl.freeFrames; f != null; f = f.next) {
+        if (kept++ == maxFreeFrames) {
+          if (last == null)
+            funDecl.freeFrames = null;
+          else
+            last.next = null;
+          break;
+        }
+        clearReleased(f);
+        last = f;
+      }
+    }
+    for (Frame f = frame; f != null; f = f.caller != null ? f.caller : f.parent)
+      clearReleased(f.spare);
+  }
+
+
+  // clears the slots of the given released frame and of the released
+  // frames it keeps
+  private static void clearReleased(Frame f) {
+    for (; f != null; f = f.spare)
+      Arrays.fill(f.slots, null);
+  }
+
+
+  // creates an object from its shape's template, running the field
+  // initializers that aren't literals (if any) in a frame of their own
+  // under the type's declaring frame
+  private void newInFrame(final NewRValue node, final List<Object> typeInfo)
+      throws MyPLException {
+    final TypeDeclStmt typeDecl = (TypeDeclStmt)typeInfo.get(1);
+    if (collectThreshold > 0 && ++newsSinceCollect >= collectThreshold)
+      collect();
+    final MyPLObject obj = new MyPLObject(Shape.of(typeDecl));
+    if (obj.shape.allConstant) {
+      currVal = obj;
+      return;
+    }
+    final Frame currFrame = frame;
+    frame = new Frame((Frame)typeInfo.get(0), typeDecl.fields.size(), unboxed);
+    frame.caller = currFrame;
+    for (int i = 0; i < obj.fields.length; i++) {
+      final VarDeclStmt varDecl = typeDecl.fields.get(i);
+      if (obj.shape.constant[i]) {
+        store(frame, varDecl.slot, varDecl.type, obj.fields[i]);
+        continue;
+      }
+      varDecl.accept(this);
+      obj.fields[i] = load(frame, varDecl.slot, varDecl.type);
+    }
+    frame = currFrame;
+    currVal = obj;
+  }
+
+
+  // calls a user function, evaluating the arguments straight into the
+  // parameter slots of a frame from the function's free list, under
+  // the function's declaring frame
+  private void callInFrame(final CallRValue node, final FunDeclStmt funDecl,
+                           final Frame declFrame) throws MyPLException {
+    Frame callFrame = funDecl.freeFrames;
+    if (callFrame != null)
+      funDecl.freeFrames = callFrame.next;
+    else {
+      callFrame = new Frame(declFrame, funDecl.frameSize, unboxed);
+      pooled.add(funDecl);
+    }
+    callFrame.parent = declFrame;
+    final ArrayList<Expr> args = node.argList;
+    for (int i = 0; i < args.size(); i++) {
+      final Type paramType = funDecl.type != null ? funDecl.type.paramType(i) : null;
+      if (unboxed && isPrimitive(paramType) && isTypedOperation(args.get(i))) {
+        storeTyped(callFrame, i, args.get(i));
+        continue;
+      }
+      args.get(i).accept(this);
+      store(callFrame, i, paramType, currVal);
+    }
+    final Frame currFrame = frame;
+    callFrame.caller = currFrame;
+    frame = callFrame;
+    funDecl.stmtList.accept(this);
+    returning = false;
+    frame = currFrame;
+    callFrame.caller = null;
+    callFrame.next = funDecl.freeFrames;
+    funDecl.freeFrames = callFrame;
+  }
+
+  
   private void callBuiltInFun(final CallRValue node) throws MyPLException {
-    final String funName = node.funName.lexeme();
     // get the function arguments
     final List<Object> argVals = new ArrayList<>();
     for (final Expr arg : node.argList) {
@@ -418,71 +1163,91 @@ public class Interpreter implements Visitor {
         error("nil value", getFirstToken(arg));
       argVals.add(currVal);
     }
-    if (funName.equals("print")) {
+    currVal = callBuiltIn(node.builtIn, argVals, node.funName);
+  }
+
+
+  // calls a built-in function on its (non-nil) argument values,
+  // returning its value
+  static Object callBuiltIn(final BuiltIn builtIn, final List<Object> argVals,
+                            final Token funName) throws MyPLException {
+    Object value = null;
+    switch (builtIn) {
+    case PRINT: {
       // Fix '\' 'n' issue
       String msg = (String)argVals.get(0);
       msg = msg.replace("\\n", "\n");
       msg = msg.replace("\\t", "\t");
       System.out.print(msg);
-      currVal = null;
+      value = null;
+      break;
     }
-    else if (funName.equals("read")) {
+    case READ: {
       final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
       try {
-        currVal = reader.readLine();
+        value = reader.readLine();
       }
       catch(final Exception e) {
-        currVal = null;
+        value = null;
       }
+      break;
     }
-    else if (funName.equals("get")) {
+    case GET: {
       final int index = (Integer)argVals.get(0);
       final String str = (String)argVals.get(1);
       if(0 <= index && index < str.length()){
-        currVal = str.charAt(index);
+        value = str.charAt(index);
       }else{
-        error("index is out of bounds", node.funName);
+        error("index is out of bounds", funName);
       }
+      break;
     }
-    else if (funName.equals("concat")) {
-      currVal = (String)argVals.get(0) + (String)argVals.get(1);
-    }
-    else if (funName.equals("append")) {
-      currVal = (String)argVals.get(0) + argVals.get(1).toString();
-    } 
-    else if (funName.equals("itos")) {
-      currVal = argVals.get(0).toString();
-    }
-    else if (funName.equals("stoi")) {
-      currVal = Integer.parseInt((String)argVals.get(0));
-    }
-    else if (funName.equals("dtos")) {
-      currVal = argVals.get(0).toString();
-    }
-    else if (funName.equals("stod")) {
-      currVal = Double.parseDouble((String)argVals.get(0));
-    }
-    else if(funName.equals("length")){
+    case CONCAT:
+      value = (String)argVals.get(0) + (String)argVals.get(1);
+      break;
+    case APPEND:
+      value = (String)argVals.get(0) + argVals.get(1).toString();
+      break;
+    case ITOS:
+      value = argVals.get(0).toString();
+      break;
+    case STOI:
+      value = Integer.parseInt((String)argVals.get(0));
+      break;
+    case DTOS:
+      value = argVals.get(0).toString();
+      break;
+    case STOD:
+      value = Double.parseDouble((String)argVals.get(0));
+      break;
+    case LENGTH: {
       final String str = (String)argVals.get(0);
       final int length = str.length();
-      currVal = length;
+      value = length;
+      break;
+    }
     }
+    return value;
   }
 
   
-  private void error(final String msg, final Token token) throws MyPLException {
+  static void error(final String msg, final Token token) throws MyPLException {
     final int row = token.row();
     final int col = token.column();
     throw new MyPLException("\nRuntime", msg, row, col);
   }
 
   
-  private Token getFirstToken(final Expr node) {
+  static Token getFirstToken(final Expr node) {
     return getFirstToken(node.first);
   }
 
   
-  private Token getFirstToken(final ExprTerm node) {
+  static Token getFirstToken(ExprTerm node) {
+    while (node instanceof BinaryExpr)
+      node = ((BinaryExpr)node).lhs;
+    if (node instanceof UnaryExpr)
+      return getFirstToken(((UnaryExpr)node).operand);
     if (node instanceof SimpleTerm)
       return getFirstToken(((SimpleTerm)node).rvalue);
     else
@@ -490,7 +1255,7 @@ public class Interpreter implements Visitor {
   }
 
   
-  private Token getFirstToken(final RValue node) {
+  static Token getFirstToken(final RValue node) {
     if (node instanceof SimpleRValue)
       return ((SimpleRValue)node).val;
     else if (node instanceof CallRValue)
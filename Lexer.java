@@ -18,7 +18,7 @@
 import java.util.*;
 import java.io.*;
 
-public class Lexer {
+public class Lexer implements TokenSource {
 
   private BufferedReader buffer; // handle to input stream
   private int line;
@@ -0,0 +1,19 @@
+/**
+ * File: MyPLObject.java
+ *
+ * An object of a struct type: its field values, in the slots given by
+ * its shape. Variables and fields refer to objects directly, so an
+ * object no longer reachable from the program is reclaimed by the JVM.
+ * A new object starts as a copy of its shape's template.
+ */
+
+public final class MyPLObject {
+
+  final Shape shape;
+  final Object[] fields;
+
+  public MyPLObject(Shape shape) {
+    this.shape = shape;
+    this.fields = shape.template.clone();
+  }
+}
@@ -2,6 +2,7 @@
 public class NewRValue implements RValue {
 
   public Token typeId = null;
+  public StructType type = null; // set by the type checker
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
@@ -0,0 +1,38 @@
+/**
+ * File: ObjectBenchmark.java
+ *
+ * Measures the memory allocated per object by the interpreter when a
+ * program builds a complete binary tree, with variables looked up by
+ * name and kept in frames (see Interpreter.useFrames). Every node
+ * stays reachable from the root, so the allocation per node is the
+ * node's own size plus what creating it costs. Objects are MyPLObjects
+ * in both modes, which differ only in how variables are kept.
+ *
+ * Usage: java ObjectBenchmark [depth]
+ */
+
+public class ObjectBenchmark {
+
+  private static final String PROGRAM =
+    "type Node\n" +
+    "  var value := 0\n" +
+    "  var Node left := nil\n" +
+    "  var Node right := nil\n" +
+    "end\n" +
+    "fun Node build(int depth)\n" +
+    "  var n := new Node\n" +
+    "  if depth > 1 then\n" +
+    "    set n.left := build(depth - 1)\n" +
+    "    set n.right := build(depth - 1)\n" +
+    "  end\n" +
+    "  return n\n" +
+    "end\n" +
+    "var root := build(DEPTH)\n";
+
+  public static void main(String[] args) throws MyPLException {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    Benchmark.report(n -> PROGRAM.replace("DEPTH", Integer.toString(n)),
+                     depth - 3, depth, (1L << depth) - 1, "node",
+                     Benchmark.Mode.BY_NAME, Benchmark.Mode.FRAMES);
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * File: Operation.java
+ *
+ * Binary operations specialized by operand type. The type checker
+ * lowers each operator whose operand type it knows to one of these
+ * (stored in Expr.operation and BinaryExpr.operation), so the
+ * interpreter can dispatch on the operation once instead of comparing
+ * operator strings and testing the operand classes.
+ */
+
+public enum Operation {
+
+  INT_ADD, INT_SUB, INT_MUL, INT_DIV, INT_MOD,
+  INT_LESS, INT_LESS_EQUAL, INT_GREATER, INT_GREATER_EQUAL,
+  DOUBLE_ADD, DOUBLE_SUB, DOUBLE_MUL, DOUBLE_DIV,
+  DOUBLE_LESS, DOUBLE_LESS_EQUAL, DOUBLE_GREATER, DOUBLE_GREATER_EQUAL,
+  AND, OR, EQUAL, NOT_EQUAL;
+
+  /**
+   * The operation for the given operator on operands of the given type
+   * (the non-nil operand's), or null if there is no specialized one.
+   */
+  public static Operation of(TokenType operator, Type operandType) {
+    switch (operator) {
+    case EQUAL: return EQUAL;
+    case NOT_EQUAL: return NOT_EQUAL;
+    case AND: return operandType == Type.BOOL ? AND : null;
+    case OR: return operandType == Type.BOOL ? OR : null;
+    default: break;
+    }
+    if (operandType == Type.INT) {
+      switch (operator) {
+      case PLUS: return INT_ADD;
+      case MINUS: return INT_SUB;
+      case MULTIPLY: return INT_MUL;
+      case DIVIDE: return INT_DIV;
+      case MODULO: return INT_MOD;
+      case LESS_THAN: return INT_LESS;
+      case LESS_THAN_EQUAL: return INT_LESS_EQUAL;
+      case GREATER_THAN: return INT_GREATER;
+      case GREATER_THAN_EQUAL: return INT_GREATER_EQUAL;
+      default: return null;
+      }
+    }
+    if (operandType == Type.DOUBLE) {
+      switch (operator) {
+      case PLUS: return DOUBLE_ADD;
+      case MINUS: return DOUBLE_SUB;
+      case MULTIPLY: return DOUBLE_MUL;
+      case DIVIDE: return DOUBLE_DIV;
+      case LESS_THAN: return DOUBLE_LESS;
+      case LESS_THAN_EQUAL: return DOUBLE_LESS_EQUAL;
+      case GREATER_THAN: return DOUBLE_GREATER;
+      case GREATER_THAN_EQUAL: return DOUBLE_GREATER_EQUAL;
+      default: return null;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Whether this operation's operands and value are ints (+ - * / %).
+   */
+  public boolean isIntArithmetic() {
+    return compareTo(INT_MOD) <= 0;
+  }
+
+  /**
+   * Whether this operation compares ints (< <= > >=).
+   */
+  public boolean isIntComparison() {
+    return compareTo(INT_LESS) >= 0 && compareTo(INT_GREATER_EQUAL) <= 0;
+  }
+
+  /**
+   * Whether this operation's operands and value are doubles (+ - * /).
+   */
+  public boolean isDoubleArithmetic() {
+    return compareTo(DOUBLE_ADD) >= 0 && compareTo(DOUBLE_DIV) <= 0;
+  }
+
+  /**
+   * Whether this operation compares doubles (< <= > >=).
+   */
+  public boolean isDoubleComparison() {
+    return compareTo(DOUBLE_LESS) >= 0 && compareTo(DOUBLE_GREATER_EQUAL) <= 0;
+  }
+}
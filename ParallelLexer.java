@@ -0,0 +1,121 @@
+/**
+ * File: ParallelLexer.java
+ *
+ * Opt-in parallel tokenizer for large sources. MyPL comments and
+ * string literals never span lines, so the source can be cut into
+ * chunks at newline boundaries, each chunk scanned by its own
+ * FastLexer on a ForkJoinPool, and the resulting token streams
+ * stitched back together with their line numbers shifted.
+ *
+ * A chunk boundary is only placed after a newline that directly
+ * follows a non-blank character on a line without quotes. Such a
+ * newline always resets the lexer to the start of the next line, so
+ * each chunk can start from line 1, column 0 and be shifted by the
+ * number of lines the lexer counted in the chunks before it. If any
+ * chunk fails (including a literal running into the end of its
+ * chunk), everything from that chunk on is rescanned serially, so
+ * the tokens and errors are exactly those of a serial scan.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelLexer {
+
+  // sources smaller than this are not worth splitting
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  /**
+   * Tokenizes the given source using chunks of roughly the default
+   * chunk size.
+   */
+  public static TokenStream tokenize(char[] source) throws MyPLException {
+    return tokenize(source, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Tokenizes the given source on the given pool using chunks of
+   * roughly chunkSize characters.
+   */
+  public static TokenStream tokenize(char[] source, int chunkSize, ForkJoinPool pool)
+      throws MyPLException {
+    List<Integer> bounds = split(source, chunkSize);
+    int chunks = bounds.size() - 1;
+    // scan the chunks in parallel
+    List<ForkJoinTask<Object>> tasks = new ArrayList<>();
+    for (int i = 0; i < chunks; ++i) {
+      int start = bounds.get(i);
+      int end = bounds.get(i + 1);
+      tasks.add(pool.submit(() -> scanChunk(source, start, end)));
+    }
+    // stitch the chunk streams together in order
+    TokenStream stream = new TokenStream(source);
+    int lineOffset = 0;
+    for (int i = 0; i < chunks; ++i) {
+      Object result = tasks.get(i).join();
+      if (result instanceof MyPLException) {
+        for (int j = i + 1; j < chunks; ++j)
+          tasks.get(j).cancel(false);
+        // rescan the rest serially, starting from the known line
+        stream.scan(new FastLexer(source, bounds.get(i), source.length, lineOffset + 1));
+        return stream;
+      }
+      TokenStream chunk = (TokenStream) result;
+      boolean last = i == chunks - 1;
+      stream.append(chunk, lineOffset, last);
+      // the chunk's EOS token sits on the line after its last counted newline
+      lineOffset += chunk.line(chunk.size() - 1) - 1;
+    }
+    return stream;
+  }
+
+  // returns the chunk boundaries, starting with 0 and ending with
+  // source.length
+  static List<Integer> split(char[] source, int chunkSize) {
+    List<Integer> bounds = new ArrayList<>();
+    bounds.add(0);
+    int next = chunkSize;
+    while (next < source.length) {
+      int cut = nextSafeCut(source, next);
+      if (cut < 0)
+        break;
+      bounds.add(cut);
+      next = cut + chunkSize;
+    }
+    bounds.add(source.length);
+    return bounds;
+  }
+
+  // finds the first safe chunk start at or after from, or -1
+  private static int nextSafeCut(char[] source, int from) {
+    int lineStart = from;
+    while (lineStart > 0 && source[lineStart - 1] != '\n')
+      lineStart--;
+    boolean quoted = false;
+    for (int i = lineStart; i < source.length - 1; ++i) {
+      char c = source[i];
+      if (c == '\'' || c == '"') {
+        quoted = true;
+      } else if (c == '\n') {
+        if (i >= from && !quoted && i > 0 && !Character.isWhitespace(source[i - 1]))
+          return i + 1;
+        quoted = false;
+      }
+    }
+    return -1;
+  }
+
+  // scans source[start, end) from line 1, returning the token stream
+  // or the error raised
+  private static Object scanChunk(char[] source, int start, int end) {
+    TokenStream chunk = new TokenStream(source, (end - start) / 4);
+    try {
+      chunk.scan(new FastLexer(source, start, end, 1));
+      return chunk;
+    } catch (MyPLException e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * File: ParallelTypeChecker.java
+ *
+ * Opt-in parallel type checking. A first pass checks the program on
+ * one thread with every function body deferred, which collects the
+ * type and function signatures and all global names. The deferred
+ * bodies are independent of each other, so they are then checked in
+ * batches on a ForkJoinPool, each batch by its own TypeChecker that
+ * reads the (now fixed) global environments of the first pass.
+ *
+ * Errors are the same as a serial check's: a body is checked as it
+ * would have been at its declaration, with each global name (a type
+ * declared again later, say) as declared before it (see
+ * TypeChecker.checkBody, and p16.mypl), and the error reported is the
+ * first one in source order, that is, the error of the first failing
+ * body or, if no body fails, the error that stopped the first pass
+ * (which every deferred body precedes). So is the output: each checker
+ * buffers its own (see TypeChecker.bufferOutput), and only that of the
+ * checker whose error is reported is printed.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelTypeChecker {
+
+  // programs with fewer function bodies are checked on one thread
+  public static final int MIN_PARALLEL_BODIES = 64;
+
+  /**
+   * Type checks the given program on the common pool, returning the
+   * checker of its first pass (for checking lazily parsed bodies).
+   */
+  public static TypeChecker check(StmtList program) throws MyPLException {
+    return check(program, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Type checks the given program on the given pool, returning the
+   * checker of its first pass (for checking lazily parsed bodies).
+   */
+  public static TypeChecker check(StmtList program, ForkJoinPool pool) throws MyPLException {
+    TypeChecker checker = new TypeChecker();
+    List<FunDeclStmt> bodies = new ArrayList<>();
+    checker.deferBodies(bodies);
+    // the first pass's output is printed only if its error is reported
+    StringBuilder passOutput = new StringBuilder();
+    checker.bufferOutput(passOutput);
+    MyPLException passError = null;
+    try {
+      program.accept(checker);
+    } catch (MyPLException e) {
+      passError = e;
+    }
+    checker.deferBodies(null);
+    checker.bufferOutput(null);
+    if (bodies.size() < MIN_PARALLEL_BODIES) {
+      checkBodies(checker, bodies, 0, bodies.size());
+    } else {
+      // check the bodies in batches, a few per worker thread, each
+      // keeping its output until it is known whose error is reported
+      int batchSize = Math.max(1, bodies.size() / (pool.getParallelism() * 4));
+      int batches = (bodies.size() + batchSize - 1) / batchSize;
+      StringBuilder[] outputs = new StringBuilder[batches];
+      List<ForkJoinTask<MyPLException>> tasks = new ArrayList<>();
+      for (int batch = 0; batch < batches; ++batch) {
+        int from = batch * batchSize;
+        int to = Math.min(from + batchSize, bodies.size());
+        StringBuilder output = outputs[batch] = new StringBuilder();
+        tasks.add(pool.submit(() -> checkBatch(checker, bodies, from, to, output)));
+      }
+      // report the first error in source order
+      for (int i = 0; i < tasks.size(); ++i) {
+        MyPLException error = tasks.get(i).join();
+        if (error != null) {
+          for (int j = i + 1; j < tasks.size(); ++j)
+            tasks.get(j).cancel(false);
+          System.out.print(outputs[i]);
+          throw error;
+        }
+      }
+    }
+    if (passError != null) {
+      System.out.print(passOutput);
+      throw passError;
+    }
+    return checker;
+  }
+
+  // checks bodies[from, to) in order with the given checker
+  private static void checkBodies(TypeChecker checker, List<FunDeclStmt> bodies,
+                                  int from, int to) throws MyPLException {
+    for (int i = from; i < to; ++i)
+      checker.checkBody(bodies.get(i));
+  }
+
+  // checks bodies[from, to) with a new checker sharing the program's
+  // global environments, buffering its output in the given buffer, and
+  // returning the first error raised or null
+  private static MyPLException checkBatch(TypeChecker program, List<FunDeclStmt> bodies,
+                                          int from, int to, StringBuilder output) {
+    try {
+      TypeChecker checker = new TypeChecker(program);
+      checker.bufferOutput(output);
+      checkBodies(checker, bodies, from, to);
+      return null;
+    } catch (MyPLException e) {
+      return e;
+    }
+  }
+}
@@ -14,17 +14,86 @@ import java.util.*;
 
 public class Parser {
 
-  private Lexer lexer;
+  private TokenSource lexer;
   private Token currToken = null;
+  private TokenStream tokens = null;  // set when parsing a token stream
+  private int index = -1;             // index of the current token in tokens
+  private boolean precedence = false; // parse expressions by precedence climbing
+  private boolean lazyBodies = false; // leave function bodies unparsed until called
   private boolean debug_flag = false; // set to false to remove debug comments
 
+  // operator precedence levels (higher binds tighter)
+  private static final int OR_PRECEDENCE = 1;
+  private static final int AND_PRECEDENCE = 2;
+  private static final int NOT_PRECEDENCE = 3;
+  private static final int COMPARE_PRECEDENCE = 4;
+  private static final int ADD_PRECEDENCE = 5;
+  private static final int MULTIPLY_PRECEDENCE = 6;
+
+  private static final Set<TokenType> OPERATORS = EnumSet.of(TokenType.PLUS, TokenType.MINUS,
+      TokenType.DIVIDE, TokenType.MULTIPLY, TokenType.MODULO, TokenType.AND, TokenType.OR,
+      TokenType.EQUAL, TokenType.LESS_THAN, TokenType.GREATER_THAN, TokenType.LESS_THAN_EQUAL,
+      TokenType.GREATER_THAN_EQUAL, TokenType.NOT_EQUAL);
+  private static final Set<TokenType> VALUES = EnumSet.of(TokenType.INT_VAL,
+      TokenType.DOUBLE_VAL, TokenType.BOOL_VAL, TokenType.CHAR_VAL, TokenType.STRING_VAL);
+  private static final Set<TokenType> RVALUE_STARTS = EnumSet.of(TokenType.NIL, TokenType.NEW,
+      TokenType.NEG, TokenType.ID, TokenType.INT_VAL, TokenType.DOUBLE_VAL, TokenType.BOOL_VAL,
+      TokenType.CHAR_VAL, TokenType.STRING_VAL);
+  private static final Set<TokenType> BSTMT_STARTS = EnumSet.of(TokenType.VAR, TokenType.SET,
+      TokenType.IF, TokenType.WHILE, TokenType.FOR, TokenType.RETURN, TokenType.NOT,
+      TokenType.LPAREN, TokenType.NIL, TokenType.NEW, TokenType.NEG, TokenType.ID,
+      TokenType.INT_VAL, TokenType.DOUBLE_VAL, TokenType.BOOL_VAL, TokenType.CHAR_VAL,
+      TokenType.STRING_VAL);
+  private static final Set<TokenType> TYPES = EnumSet.of(TokenType.INT_TYPE,
+      TokenType.DOUBLE_TYPE, TokenType.BOOL_TYPE, TokenType.CHAR_TYPE, TokenType.STRING_TYPE,
+      TokenType.ID);
+
   /**
    * Create a new parser over the given lexer.
    */
-  public Parser(Lexer lexer) {
+  public Parser(TokenSource lexer) {
     this.lexer = lexer;
   }
 
+  /**
+   * Create a new parser over an already scanned token stream. Token
+   * objects are only built for the tokens stored in the AST.
+   */
+  public Parser(TokenStream tokens) {
+    this.tokens = tokens;
+  }
+
+  /**
+   * Parse expressions into BinaryExpr and UnaryExpr trees using the
+   * usual operator precedence (or, and, not, comparisons, + -, * / %,
+   * neg; binary operators are left associative) instead of the default
+   * right-linked Expr chains, which apply operators right to left with
+   * no precedence.
+   */
+  public void usePrecedence(boolean precedence) {
+    this.precedence = precedence;
+  }
+
+  /**
+   * Leave function bodies unparsed: fdecl only scans ahead to the
+   * body's end, and parseBody() builds the body when the function is
+   * first called. Only takes effect when parsing a token stream.
+   */
+  public void useLazyBodies(boolean lazy) {
+    this.lazyBodies = lazy;
+  }
+
+  /**
+   * Parses the body of a function left unparsed in lazy mode. Any
+   * error is the same (at the same position) as parsing it in place.
+   */
+  public void parseBody(FunDeclStmt node) throws MyPLException {
+    index = node.bodyStart;
+    node.bodyParser = null;
+    bstmts(node.stmtList);
+    eat(TokenType.END, "End (end) is expected");
+  }
+
   //Ensures program is syntactically correct. On error, throws a MyPLException.
   public StmtList parse() throws MyPLException {
     StmtList stmtListNode = new StmtList(); //create StmtList node 
@@ -38,13 +107,30 @@ public class Parser {
 
   // sets current token to next token in stream
   private void advance() throws MyPLException {
-    currToken = lexer.nextToken();
+    if (tokens == null)
+      currToken = lexer.nextToken();
+    else if (index < tokens.size() - 1)
+      index++;
+  }
+
+  // type of the current token
+  private TokenType currType() {
+    if (tokens == null)
+      return currToken.type();
+    return tokens.type(index);
+  }
+
+  // the current token (built on demand from a token stream)
+  private Token currToken() {
+    if (tokens == null)
+      return currToken;
+    return tokens.token(index);
   }
 
   // checks that current token matches given type and advances,
   // otherwise creates an error with the given error message
   private void eat(TokenType t, String errmsg) throws MyPLException {
-    if (currToken.type() == t) {
+    if (currType() == t) {
       advance();
     } else {
       error(errmsg);
@@ -54,9 +140,10 @@ public class Parser {
   // generates an error message from the given message and throws a
   // corresponding MyPLException
   private void error(String errmsg) throws MyPLException {
-    String s = errmsg + " found '" + currToken.lexeme() + "'";
-    int row = currToken.row();
-    int col = currToken.column();
+    Token token = currToken();
+    String s = errmsg + " found '" + token.lexeme() + "'";
+    int row = token.row();
+    int col = token.column();
     throw new MyPLException("Parser", errmsg, row, col);
   }
 
@@ -71,32 +158,30 @@ public class Parser {
   /*AST Functions*/
 
   // <stmts> ::= <stmt> <stmts> | epsilon
+  // (parsed as a loop so long programs don't grow the stack)
   private void stmts(StmtList stmtListNode) throws MyPLException {
     debug("<stmts>");
-    if (currToken.type() != TokenType.EOS){
+    while (currType() != TokenType.EOS) {
       stmt(stmtListNode);
-      stmts(stmtListNode);
+      debug("<stmts>");
     }
   }
 
   // <bstmts> ::= <bstmt> <bstmts> | epsilon
   private void bstmts(StmtList stmtListNode) throws MyPLException {
     debug("<bstmts>");
-    if (currToken.type() == TokenType.VAR || currToken.type() == TokenType.SET || currToken.type() == TokenType.IF
-        || currToken.type() == TokenType.WHILE || currToken.type() == TokenType.FOR
-        || currToken.type() == TokenType.RETURN || currToken.type() == TokenType.NOT
-        || currToken.type() == TokenType.LPAREN || isRPVal(currToken.type())) {
+    while (BSTMT_STARTS.contains(currType())) {
       stmtListNode.stmts.add(bstmt());
-      bstmts(stmtListNode);
+      debug("<bstmts>");
     }
   }
 
   // <stmt> ::= ⟨tdecl⟩ | ⟨fdecl⟩ | ⟨bstmt⟩
   private void stmt(StmtList stmtListNode) throws MyPLException {
     debug("<stmt>");
-    if (currToken.type() == TokenType.TYPE) {
+    if (currType() == TokenType.TYPE) {
       tdecl(stmtListNode);
-    } else if (currToken.type() == TokenType.FUN) {
+    } else if (currType() == TokenType.FUN) {
       fdecl(stmtListNode);
     } else {
       stmtListNode.stmts.add(bstmt());
@@ -106,17 +191,17 @@ public class Parser {
   // <bstmt> ::= ⟨vdecl⟩ | ⟨assign⟩ | ⟨cond⟩ | ⟨while⟩ | ⟨for⟩ | ⟨expr⟩ | ⟨exit⟩
   private Stmt bstmt() throws MyPLException {
     debug("<bstmt>");
-    if (currToken.type() == TokenType.VAR) {
+    if (currType() == TokenType.VAR) {
       return vdecl();
-    } else if (currToken.type() == TokenType.SET) {
+    } else if (currType() == TokenType.SET) {
       return assign();
-    } else if (currToken.type() == TokenType.IF) {
+    } else if (currType() == TokenType.IF) {
       return cond();
-    } else if (currToken.type() == TokenType.WHILE) {
+    } else if (currType() == TokenType.WHILE) {
       return whileLoop();
-    } else if (currToken.type() == TokenType.FOR) {
+    } else if (currType() == TokenType.FOR) {
       return forLoop();
-    } else if (currToken.type() == TokenType.RETURN) {
+    } else if (currType() == TokenType.RETURN) {
       return exit();
     } else {
       // Expr exprNode = new Expr();
@@ -130,7 +215,7 @@ public class Parser {
     debug("<tdecl>");
     TypeDeclStmt typeNode = new TypeDeclStmt(); //create typedecl node
     eat(TokenType.TYPE, "A Type (string, etc) is expected");
-    typeNode.typeId = currToken;
+    typeNode.typeId = currToken();
     eat(TokenType.ID, "Identifier (ID) expected");
     vdecls(typeNode);
     eat(TokenType.END, "End (end) is expected");
@@ -140,9 +225,9 @@ public class Parser {
   // <vdecls> ::= ⟨vdecl⟩ ⟨vdecls⟩ | ε
   private void vdecls(TypeDeclStmt typeNode) throws MyPLException {
     debug("<vdecls>");
-    if (currToken.type() == TokenType.VAR) {
+    while (currType() == TokenType.VAR) {
       typeNode.fields.add(vdecl());
-      vdecls(typeNode);
+      debug("<vdecls>");
     }
   }
 
@@ -151,39 +236,61 @@ public class Parser {
     debug("<fdecl>");
     FunDeclStmt funDeclNode = new FunDeclStmt();
     eat(TokenType.FUN, "Function (fun) expected");
-    if (isType(currToken.type())) {
-      funDeclNode.returnType = currToken;
+    if (isType(currType())) {
+      funDeclNode.returnType = currToken();
       advance();
     } else{
-      funDeclNode.returnType = currToken;
+      funDeclNode.returnType = currToken();
       eat(TokenType.NIL, "Function type ('int', 'nil', etc) expected");
     } 
-    funDeclNode.funName = currToken;
+    funDeclNode.funName = currToken();
     eat(TokenType.ID, "Identifier (ID) is expected");
     eat(TokenType.LPAREN, "Left parthesis '(' expected");
     params(funDeclNode);
     eat(TokenType.RPAREN, "Right parethesis ')' expected");
-    bstmts(funDeclNode.stmtList);
+    if (!lazyBodies || tokens == null || !skipBody(funDeclNode))
+      bstmts(funDeclNode.stmtList);
     eat(TokenType.END, "End (end) is expected");
     stmtListNode.stmts.add(funDeclNode);
   }
 
+  // skips a function body up to its END (counting the blocks that
+  // have their own END), leaving it for parseBody(). Returns false
+  // without skipping if the body runs into a token that can't be part
+  // of it, so the error is reported by parsing the body in place.
+  private boolean skipBody(FunDeclStmt funDeclNode) {
+    int depth = 0;
+    for (int i = index; ; i++) {
+      TokenType t = tokens.type(i);
+      if (t == TokenType.IF || t == TokenType.WHILE || t == TokenType.FOR) {
+        depth++;
+      } else if (t == TokenType.END && depth-- == 0) {
+        funDeclNode.bodyParser = this;
+        funDeclNode.bodyStart = index;
+        index = i;
+        return true;
+      } else if (t == TokenType.EOS || t == TokenType.TYPE || t == TokenType.FUN) {
+        return false;
+      }
+    }
+  }
+
   // <params> ::= ⟨dtype⟩ ID ( COMMA ⟨dtype⟩ ID )∗ | ε
   private void params(FunDeclStmt funDeclNode) throws MyPLException {
     debug("<params>");
-    if (isType(currToken.type())) {
+    if (isType(currType())) {
       FunParam funNode = new FunParam();
-      funNode.paramType = currToken;
+      funNode.paramType = currToken();
       dtype();
-      funNode.paramName = currToken;
+      funNode.paramName = currToken();
       eat(TokenType.ID, "Identifier (ID) expected");
       funDeclNode.params.add(funNode);
-      while (currToken.type() == TokenType.COMMA) {
+      while (currType() == TokenType.COMMA) {
         FunParam funNode2 = new FunParam();
         eat(TokenType.COMMA, "Comma (,) expected");
-        funNode2.paramType = currToken;
+        funNode2.paramType = currToken();
         dtype();
-        funNode2.paramName = currToken;
+        funNode2.paramName = currToken();
         eat(TokenType.ID, "Identifier (ID) expected");
         funDeclNode.params.add(funNode2);
       }
@@ -193,7 +300,7 @@ public class Parser {
   // <dtype> ::= INT_TYPE | DOUBLE_TYPE | BOOL_TYPE | CHAR_TYPE | STRING_TYPE | ID
   private void dtype() throws MyPLException {
     debug("<dtype>");
-    if (isType(currToken.type())){
+    if (isType(currType())){
       advance();
     }else{
       error("A Type (string, etc) is expected");
@@ -204,10 +311,10 @@ public class Parser {
   private Stmt exit() throws MyPLException {
     debug("<exit>");
     ReturnStmt returnNode = new ReturnStmt();
-    returnNode.returnToken = currToken;
+    returnNode.returnToken = currToken();
     eat(TokenType.RETURN, "A Return (return) is expected");
-    if (currToken.type() != TokenType.END) {
-      if(currToken.type() != TokenType.RETURN){
+    if (currType() != TokenType.END) {
+      if(currType() != TokenType.RETURN){
         returnNode.returnExpr = expr();
       }
     }
@@ -219,12 +326,12 @@ public class Parser {
     debug("<vdecl>");
     VarDeclStmt varDeclNode = new VarDeclStmt();
     eat(TokenType.VAR, "Variable (13, etc) expected");
-    Token save = currToken;
+    Token save = currToken();
     advance();
-    if(currToken.type() != TokenType.ID){
+    if(currType() != TokenType.ID){
       varDeclNode.varId = save;
     }else{
-      varDeclNode.varId = currToken;
+      varDeclNode.varId = currToken();
       varDeclNode.varType = save;
       eat(TokenType.ID, "Identifier (ID) expected");
     }
@@ -248,11 +355,11 @@ public class Parser {
   private void lvalue(AssignStmt assignNode) throws MyPLException {
     debug("<lvalue>");
     LValue lvalNode = new LValue();
-    lvalNode.path.add(currToken);
+    lvalNode.path.add(currToken());
     eat(TokenType.ID, "Identifier (ID) expected");
-    while (currToken.type() == TokenType.DOT) {
+    while (currType() == TokenType.DOT) {
       advance();
-      lvalNode.path.add(currToken);
+      lvalNode.path.add(currToken());
       eat(TokenType.ID, "Identifier (ID) expected");
     }
     assignNode.lhs = lvalNode;
@@ -274,15 +381,16 @@ public class Parser {
   // <condt> ::= ELIF ⟨expr ⟩ THEN ⟨bstmts ⟩ ⟨condt ⟩ | ELSE ⟨bstmts ⟩ | ε
   private void condt(IfStmt ifNode) throws MyPLException {
     debug("<condt>");
-    BasicIf basicNode = new BasicIf();
-    if (currToken.type() == TokenType.ELIF) {
+    while (currType() == TokenType.ELIF) {
+      BasicIf basicNode = new BasicIf();
       eat(TokenType.ELIF, "Else if (elif) is expected");
       basicNode.boolExpr = expr();
       eat(TokenType.THEN, "Then (then) is expected after the expression");
       bstmts(basicNode.stmtList);
       ifNode.elsifs.add(basicNode);
-      condt(ifNode);
-    } else if (currToken.type() == TokenType.ELSE) {
+      debug("<condt>");
+    }
+    if (currType() == TokenType.ELSE) {
       ifNode.hasElse = true;
       advance();
       bstmts(ifNode.elseStmtList);
@@ -306,7 +414,7 @@ public class Parser {
     debug("<forLoop>");
     ForStmt forNode = new ForStmt();
     eat(TokenType.FOR, "For (for) is expected to start for loop");
-    forNode.var = currToken;
+    forNode.var = currToken();
     eat(TokenType.ID, "Identifier (ID) expected");
     eat(TokenType.ASSIGN, "Assignment operator (:=) expected");
     forNode.startExpr = expr();
@@ -323,13 +431,17 @@ public class Parser {
   private Expr expr() throws MyPLException {
     debug("<expr>");
     Expr expr = new Expr();
+    if (precedence) {
+      expr.first = binary(OR_PRECEDENCE);
+      return expr;
+    }
     ComplexTerm comp = new ComplexTerm();
-    if (currToken.type() == TokenType.NOT) {
+    if (currType() == TokenType.NOT) {
       advance();
       expr = expr();
       expr.negated = true;
       return expr;
-    } else if (currToken.type() == TokenType.LPAREN) {
+    } else if (currType() == TokenType.LPAREN) {
       advance();
       comp.expr = expr(); //complex if parenthesis
       expr.first = comp;
@@ -339,45 +451,105 @@ public class Parser {
       simple.rvalue = rvalue(); //simple case
       expr.first = simple;
     }
-    if (isOp(currToken.type())) {
-      expr.operator = currToken;
+    if (isOp(currType())) {
+      expr.operator = currToken();
       advance();
       expr.rest = expr();
     }
     return expr;
   }
 
+  // precedence climbing (when enabled), where p is an operator's precedence:
+  // <binary(min)> ::= <unary> ( <operator> <binary(p + 1)> )*   for each p >= min
+  // <unary> ::= NOT <binary(NOT)> | NEG <unary> | LPAREN <expr> RPAREN | <rvalue>
+  private ExprTerm binary(int minPrecedence) throws MyPLException {
+    debug("<binary>");
+    ExprTerm lhs = unary();
+    int prec = precedence(currType());
+    while (prec >= minPrecedence) {
+      BinaryExpr node = new BinaryExpr();
+      node.lhs = lhs;
+      if (lhs instanceof BinaryExpr)
+        ((BinaryExpr)lhs).parent = node;
+      node.operator = currToken();
+      advance();
+      node.rhs = binary(prec + 1);
+      lhs = node;
+      prec = precedence(currType());
+    }
+    return lhs;
+  }
+
+  private ExprTerm unary() throws MyPLException {
+    debug("<unary>");
+    if (currType() == TokenType.NOT || currType() == TokenType.NEG) {
+      UnaryExpr node = new UnaryExpr();
+      node.operator = currToken();
+      advance();
+      if (node.operator.type() == TokenType.NOT)
+        node.operand = binary(NOT_PRECEDENCE);
+      else
+        node.operand = unary();
+      return node;
+    } else if (currType() == TokenType.LPAREN) {
+      advance();
+      ComplexTerm comp = new ComplexTerm();
+      comp.expr = expr();
+      eat(TokenType.RPAREN, "Right parethesis ')' is expected");
+      return comp;
+    }
+    SimpleTerm simple = new SimpleTerm();
+    simple.rvalue = rvalue();
+    return simple;
+  }
+
+  // precedence of a binary operator, or -1 if not an operator
+  private int precedence(TokenType t) {
+    switch (t) {
+    case OR:
+      return OR_PRECEDENCE;
+    case AND:
+      return AND_PRECEDENCE;
+    case EQUAL: case NOT_EQUAL: case LESS_THAN: case LESS_THAN_EQUAL:
+    case GREATER_THAN: case GREATER_THAN_EQUAL:
+      return COMPARE_PRECEDENCE;
+    case PLUS: case MINUS:
+      return ADD_PRECEDENCE;
+    case MULTIPLY: case DIVIDE: case MODULO:
+      return MULTIPLY_PRECEDENCE;
+    default:
+      return -1;
+    }
+  }
+
   // <isOp> ::= PLUS | MINUS | DIVIDE | MULTIPLY | MODULO | AND | OR | EQUAL |
   // LESS_THAN | GREATER_THAN | LESS_THAN_EQUAL | GREATER_THAN_EQUAL | NOT_EQUAL
   private boolean isOp(TokenType t) {
     debug("<isOp>");
-    Set<TokenType> s = Set.of(TokenType.PLUS, TokenType.MINUS, TokenType.DIVIDE, TokenType.MULTIPLY, TokenType.MODULO,
-        TokenType.AND, TokenType.OR, TokenType.EQUAL, TokenType.LESS_THAN, TokenType.GREATER_THAN,
-        TokenType.LESS_THAN_EQUAL, TokenType.GREATER_THAN_EQUAL, TokenType.NOT_EQUAL);
-    return s.contains(t);
+    return OPERATORS.contains(t);
   }
 
   // <rvalue> ::= ⟨pval⟩ | NIL | NEW ID | ⟨idrval⟩ | NEG ⟨expr⟩
   private RValue rvalue() throws MyPLException {
     debug("<rvalue>");
     SimpleRValue simpleNode = new SimpleRValue();
-    if (currToken.type() == TokenType.NIL) {
-      simpleNode.val = currToken;
+    if (currType() == TokenType.NIL) {
+      simpleNode.val = currToken();
       advance();
       return simpleNode;
-    } else if (currToken.type() == TokenType.NEW) {
+    } else if (currType() == TokenType.NEW) {
       NewRValue newRValNode = new NewRValue();
       advance();
-      newRValNode.typeId = currToken;
+      newRValNode.typeId = currToken();
       eat(TokenType.ID, "Identifier (ID) expected");
       return newRValNode;
-    } else if (currToken.type() == TokenType.NEG) {
+    } else if (currType() == TokenType.NEG) {
       NegatedRValue negNode = new NegatedRValue();
       advance();
       negNode.expr = expr();
       return negNode;
-    } else if(isVal(currToken.type())) {
-      simpleNode.val = currToken;
+    } else if(isVal(currType())) {
+      simpleNode.val = currToken();
       pval();
       return simpleNode;
     } else {
@@ -388,24 +560,13 @@ public class Parser {
   // <pval> ::= INT_VAL | DOUBLE_VAL | BOOL_VAL | CHAR_VAL | STRING_VAL
   private void pval() throws MyPLException {
     debug("<pval>");
-    Set<TokenType> s = Set.of(TokenType.INT_VAL, TokenType.DOUBLE_VAL, TokenType.BOOL_VAL, TokenType.CHAR_VAL,
-        TokenType.STRING_VAL);
-
-    if (s.contains(currToken.type())) {
+    if (VALUES.contains(currType())) {
       advance();
     }
   }
 
   private boolean isVal(TokenType t){
-    Set <TokenType> s = new HashSet<TokenType>();
-
-    s.add(TokenType.INT_VAL);
-    s.add(TokenType.DOUBLE_VAL);
-    s.add(TokenType.BOOL_VAL);
-    s.add(TokenType.CHAR_VAL);
-    s.add(TokenType.STRING_VAL);
-
-    return s.contains(t);
+    return VALUES.contains(t);
   }
 
 
@@ -414,18 +575,19 @@ public class Parser {
     debug("<idrval>");
     CallRValue callNode = new CallRValue();
     IDRValue idNode = new IDRValue();
-    callNode.funName = currToken;
-    idNode.path.add(currToken);
+    Token id = currToken();
+    callNode.funName = id;
+    idNode.path.add(id);
     eat(TokenType.ID, "Identifier (ID) expected");
-    if (currToken.type() == TokenType.LPAREN) {
+    if (currType() == TokenType.LPAREN) {
       advance();
       exprlist(callNode);
       eat(TokenType.RPAREN, "Right parenthesis ')' expected");
       return callNode;
     } else {
-      while (currToken.type() == TokenType.DOT) {
+      while (currType() == TokenType.DOT) {
         advance();
-        idNode.path.add(currToken);
+        idNode.path.add(currToken());
         eat(TokenType.ID, "Identifier (ID) expected");
       }
       return idNode;
@@ -435,9 +597,9 @@ public class Parser {
   // <exprlist> ::= ⟨expr⟩ ( COMMA ⟨expr⟩ )∗ | ε
   private void exprlist(CallRValue callNode) throws MyPLException {
     debug("<exprlist>");
-    if (currToken.type() == TokenType.NOT || currToken.type() == TokenType.LPAREN || isRPVal(currToken.type())) {
+    if (currType() == TokenType.NOT || currType() == TokenType.LPAREN || isRPVal(currType())) {
       callNode.argList.add(expr());
-      while (currToken.type() == TokenType.COMMA) {
+      while (currType() == TokenType.COMMA) {
         advance();
         callNode.argList.add(expr());
       }
@@ -446,15 +608,11 @@ public class Parser {
 
   private boolean isRPVal(TokenType t) {
     debug("<isRPVal>");
-    Set<TokenType> s = Set.of(TokenType.NIL, TokenType.NEW, TokenType.NEG, TokenType.ID, TokenType.INT_VAL,
-        TokenType.DOUBLE_VAL, TokenType.BOOL_VAL, TokenType.CHAR_VAL, TokenType.STRING_VAL);
-    return s.contains(t);
+    return RVALUE_STARTS.contains(t);
   }
 
   private boolean isType(TokenType t) {
     debug("<isType>");
-    Set<TokenType> s = Set.of(TokenType.INT_TYPE, TokenType.DOUBLE_TYPE, TokenType.BOOL_TYPE, TokenType.CHAR_TYPE,
-        TokenType.STRING_TYPE, TokenType.ID);
-    return s.contains(t);
+    return TYPES.contains(t);
   }
 }
\ No newline at end of file
@@ -180,6 +180,19 @@ public class PrintVisitor implements Visitor {
     }
   }
 
+  public void visit(BinaryExpr node){
+    out.print("(");
+    node.lhs.accept(this);
+    out.print(" " + node.operator.lexeme() + " ");
+    node.rhs.accept(this);
+    out.print(")");
+  }
+
+  public void visit(UnaryExpr node){
+    out.print(node.operator.lexeme() + " ");
+    node.operand.accept(this);
+  }
+
   public void visit(LValue node){
     int count = 0;
     for(Token item : node.path){
@@ -0,0 +1,126 @@
+/**
+ * File: ProgramCache.java
+ *
+ * Persistent on-disk cache of parsed and type checked programs. Each
+ * entry is the binary form of a program's FlatAST, stored in the
+ * cache directory under a SHA-256 hash of the source text (plus any
+ * options that change the shape of the AST). Only programs that
+ * passed the type checker are stored, so a cache hit can skip the
+ * whole front end: lexing, parsing and type checking.
+ *
+ * Every entry starts with a magic number, FlatAST.FORMAT_VERSION and
+ * a CRC-32 of the rest of the entry, which is checked before anything
+ * is decoded. Entries with another magic number or version, a wrong
+ * checksum, or that are truncated or otherwise malformed (including
+ * ones that don't rebuild into an AST), are treated as misses (and
+ * later overwritten) rather than misread.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+public class ProgramCache {
+
+  public static final String DEFAULT_DIR = ".mypl-cache";
+
+  private static final int MAGIC = 0x4D79504C; // "MyPL"
+  private static final int HEADER_SIZE = 12;    // magic, version, checksum
+
+  private final File dir;
+
+  /**
+   * Create a cache stored in the given directory (created on the
+   * first store).
+   */
+  public ProgramCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * The cache key for the given source text. The variant names any
+   * options that change the AST built for the same source.
+   */
+  public static String key(char[] source, String variant) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(source));
+      digest.update(bytes);
+      digest.update(variant.getBytes(StandardCharsets.UTF_8));
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest.digest())
+        key.append(String.format("%02x", b));
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM provides SHA-256
+    }
+  }
+
+  /**
+   * Loads the program stored under the given key, rebuilt as an AST,
+   * or returns null if there is no usable entry.
+   */
+  public StmtList load(String key) {
+    File file = new File(dir, key);
+    if (!file.isFile())
+      return null;
+    try {
+      byte[] data = Files.readAllBytes(file.toPath());
+      ByteBuffer header = ByteBuffer.wrap(data);
+      if (data.length < HEADER_SIZE || header.getInt() != MAGIC
+          || header.getInt() != FlatAST.FORMAT_VERSION
+          || header.getInt() != checksum(data, HEADER_SIZE))
+        return null;
+      return FlatAST.read(data, HEADER_SIZE).toStmtList();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stores the program under the given key. The entry is written to a
+   * temporary file and then renamed, so concurrent runs never see a
+   * partial entry. Failures are ignored (the cache is only an
+   * optimization).
+   */
+  public void store(String key, FlatAST ast) {
+    File tmp = null;
+    try {
+      Files.createDirectories(dir.toPath());
+      tmp = File.createTempFile(key, ".tmp", dir);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(FlatAST.FORMAT_VERSION);
+      out.writeInt(0); // the checksum, filled in below
+      ast.write(out);
+      byte[] data = bytes.toByteArray();
+      ByteBuffer.wrap(data).putInt(8, checksum(data, HEADER_SIZE));
+      try (FileOutputStream file = new FileOutputStream(tmp)) {
+        file.write(data);
+      }
+      Files.move(tmp.toPath(), new File(dir, key).toPath(),
+                 StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      if (tmp != null)
+        tmp.delete();
+    }
+  }
+
+  // the CRC-32 of data from the given offset to its end
+  private static int checksum(byte[] data, int offset) {
+    CRC32 crc = new CRC32();
+    crc.update(data, offset, data.length - offset);
+    return (int)crc.getValue();
+  }
+}
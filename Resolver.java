@@ -0,0 +1,241 @@
+/**
+ * File: Resolver.java
+ *
+ * Assigns every variable a lexical address, run after the type
+ * checker. At run time (see Interpreter.useFrames) each block, each
+ * function call's parameters and each new object's field initializers
+ * get a frame: an array of variable slots linked to the frame of the
+ * enclosing scope. The resolver numbers the variables declared in
+ * each such scope (VarDeclStmt.slot, ForStmt.slot), records how many
+ * slots its frame needs (StmtList.frameSize), and stamps each variable
+ * reference (IDRValue, LValue) with the number of frames to go up
+ * from the current one (depth) and its slot there.
+ *
+ * The address of a name follows the interpreter's scoping: a for
+ * loop's variable lives in the frame of the block containing the loop
+ * (but is only visible in the loop), and function bodies and field
+ * initializers see the global frame.
+ *
+ * Frames are only made where they are needed. A block that declares
+ * no variables gets no frame (its frameSize is 0) and runs in the
+ * enclosing frame, and a function body's variables share one frame
+ * with the function's parameters (FunDeclStmt.frameSize), so a call
+ * makes a single frame.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Resolver implements Visitor {
+
+  // a scope of names mapped to their slots; scopes that don't start a
+  // frame of their own (for loops) put their names in the enclosing
+  // frame
+  private static class Scope {
+    final Scope parent;
+    final boolean frame;
+    final Map<String,Integer> names = new HashMap<>();
+    int frameSize = 0; // of the frame started here
+
+    Scope(Scope parent, boolean frame) {
+      this.parent = parent;
+      this.frame = frame;
+    }
+  }
+
+  // the innermost scope, and the scope of the program's global frame
+  private Scope scope = null;
+  private Scope globals = null;
+
+  /**
+   * Resolves the body of a function whose body was left unparsed (see
+   * Parser.useLazyBodies) once it has been parsed. The program must
+   * already have been resolved by this resolver.
+   */
+  public void resolveBody(FunDeclStmt node) throws MyPLException {
+    params(node);
+  }
+
+  //------------------------
+  // visitor functions
+  //------------------------
+
+  public void visit(StmtList node) throws MyPLException {
+    // the global block always gets a frame, for declarations to refer to
+    scope = new Scope(scope, globals == null || declaresNames(node));
+    if (globals == null)
+      globals = scope;
+    for (Stmt s : node.stmts)
+      s.accept(this);
+    node.frameSize = scope.frameSize;
+    scope = scope.parent;
+  }
+
+  public void visit(VarDeclStmt node) throws MyPLException {
+    // the initializer can't see the variable being declared
+    node.varExpr.accept(this);
+    node.slot = declare(node.varId.lexeme());
+  }
+
+  public void visit(AssignStmt node) throws MyPLException {
+    node.rhs.accept(this);
+    node.lhs.accept(this);
+  }
+
+  public void visit(ReturnStmt node) throws MyPLException {
+    if (node.returnExpr != null)
+      node.returnExpr.accept(this);
+  }
+
+  public void visit(IfStmt node) throws MyPLException {
+    node.ifPart.boolExpr.accept(this);
+    node.ifPart.stmtList.accept(this);
+    for (BasicIf elseif : node.elsifs) {
+      elseif.boolExpr.accept(this);
+      elseif.stmtList.accept(this);
+    }
+    if (node.hasElse)
+      node.elseStmtList.accept(this);
+  }
+
+  public void visit(WhileStmt node) throws MyPLException {
+    node.boolExpr.accept(this);
+    node.stmtList.accept(this);
+  }
+
+  public void visit(ForStmt node) throws MyPLException {
+    node.startExpr.accept(this);
+    node.endExpr.accept(this);
+    scope = new Scope(scope, false);
+    node.slot = declare(node.var.lexeme());
+    node.stmtList.accept(this);
+    scope = scope.parent;
+  }
+
+  public void visit(TypeDeclStmt node) throws MyPLException {
+    // field initializers run in a frame of their own on each new
+    Scope currScope = scope;
+    scope = new Scope(globals, true);
+    for (VarDeclStmt field : node.fields)
+      field.accept(this);
+    scope = currScope;
+  }
+
+  public void visit(FunDeclStmt node) throws MyPLException {
+    // an unparsed body is resolved by resolveBody() once it is parsed
+    if (node.bodyParser == null)
+      params(node);
+  }
+
+  public void visit(Expr node) throws MyPLException {
+    node.first.accept(this);
+    if (node.rest != null)
+      node.rest.accept(this);
+  }
+
+  public void visit(LValue node) throws MyPLException {
+    int[] address = address(node.path.get(0));
+    node.depth = address[0];
+    node.slot = address[1];
+  }
+
+  public void visit(SimpleTerm node) throws MyPLException {
+    node.rvalue.accept(this);
+  }
+
+  public void visit(ComplexTerm node) throws MyPLException {
+    node.expr.accept(this);
+  }
+
+  public void visit(BinaryExpr node) throws MyPLException {
+    // walk the left spine iteratively, as the other visitors do
+    BinaryExpr bottom = node;
+    while (bottom.lhs instanceof BinaryExpr)
+      bottom = (BinaryExpr)bottom.lhs;
+    bottom.lhs.accept(this);
+    for (BinaryExpr curr = bottom; ; curr = curr.parent) {
+      curr.rhs.accept(this);
+      if (curr == node)
+        break;
+    }
+  }
+
+  public void visit(UnaryExpr node) throws MyPLException {
+    node.operand.accept(this);
+  }
+
+  public void visit(SimpleRValue node) throws MyPLException {
+  }
+
+  public void visit(NewRValue node) throws MyPLException {
+  }
+
+  public void visit(CallRValue node) throws MyPLException {
+    for (Expr arg : node.argList)
+      arg.accept(this);
+  }
+
+  public void visit(IDRValue node) throws MyPLException {
+    int[] address = address(node.path.get(0));
+    node.depth = address[0];
+    node.slot = address[1];
+  }
+
+  public void visit(NegatedRValue node) throws MyPLException {
+    node.expr.accept(this);
+  }
+
+  //------------------------
+  // helper functions
+  //------------------------
+
+  // resolves a function's parameters, in a frame of their own whose
+  // parent is the global frame, and then its body, whose variables
+  // (which may shadow the parameters) go in the same frame
+  private void params(FunDeclStmt node) throws MyPLException {
+    Scope currScope = scope;
+    scope = new Scope(globals, true);
+    for (FunParam param : node.params)
+      declare(param.paramName.lexeme());
+    Scope frameScope = scope;
+    scope = new Scope(scope, false);
+    for (Stmt s : node.stmtList.stmts)
+      s.accept(this);
+    node.stmtList.frameSize = 0;
+    node.frameSize = frameScope.frameSize;
+    scope = currScope;
+  }
+
+  // whether the given block declares any variables of its own
+  private static boolean declaresNames(StmtList node) {
+    for (Stmt s : node.stmts)
+      if (s instanceof VarDeclStmt || s instanceof ForStmt)
+        return true;
+    return false;
+  }
+
+  // the (depth, slot) address of the given variable name
+  private int[] address(Token name) throws MyPLException {
+    int depth = 0;
+    for (Scope s = scope; s != null; s = s.parent) {
+      Integer slot = s.names.get(name.lexeme());
+      if (slot != null)
+        return new int[] {depth, slot};
+      if (s.frame)
+        ++depth;
+    }
+    throw new MyPLException("Resolve", "undefined variable '" + name.lexeme() + "'",
+                            name.row(), name.column());
+  }
+
+  // adds a name to the current scope, returning its slot in the
+  // current frame
+  private int declare(String name) {
+    Scope owner = scope;
+    while (!owner.frame)
+      owner = owner.parent;
+    int slot = owner.frameSize++;
+    scope.names.put(name, slot);
+    return slot;
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * File: Shape.java
+ *
+ * The layout of the objects of a struct type declaration: each field
+ * has a fixed slot, in declaration order, in an object's field array
+ * (see MyPLObject). A declaration's shape is made when the type
+ * checker checks it, which looks up field slots in it, or for a
+ * program that wasn't checked, the first time one of its objects is
+ * created.
+ *
+ * A shape is also the template new objects start from: the values of
+ * the fields initialized by a literal are worked out once, and a new
+ * object's fields are a copy of them, so only the other initializers
+ * run on each new (none, for most types).
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class Shape {
+
+  final TypeDeclStmt decl;
+  private final Map<String,Integer> slots = new HashMap<>();
+  final Object[] template;   // the values of the literal initializers
+  final boolean[] constant;  // whether each field's initializer is a literal
+  final boolean allConstant; // whether every initializer is a literal
+
+  private Shape(TypeDeclStmt decl) {
+    this.decl = decl;
+    int size = decl.fields.size();
+    template = new Object[size];
+    constant = new boolean[size];
+    boolean allConstant = true;
+    for (int i = 0; i < size; ++i) {
+      VarDeclStmt field = decl.fields.get(i);
+      slots.put(field.varId.lexeme(), i);
+      Token literal = literal(field.varExpr);
+      constant[i] = literal != null;
+      if (literal != null)
+        template[i] = Interpreter.literalValue(literal);
+      else
+        allConstant = false;
+    }
+    this.allConstant = allConstant;
+  }
+
+  // the literal an initializer consists of, or null
+  private static Token literal(Expr expr) {
+    if (expr.operator != null || expr.negated || !(expr.first instanceof SimpleTerm))
+      return null;
+    RValue rvalue = ((SimpleTerm)expr.first).rvalue;
+    return rvalue instanceof SimpleRValue ? ((SimpleRValue)rvalue).val : null;
+  }
+
+  /**
+   * The shape of the given type declaration's objects.
+   */
+  public static Shape of(TypeDeclStmt decl) {
+    if (decl.shape == null)
+      decl.shape = new Shape(decl);
+    return decl.shape;
+  }
+
+  public int fieldCount() {
+    return decl.fields.size();
+  }
+
+  // the slot of the given field, or -1 if there is no such field
+  public int slot(String field) {
+    Integer slot = slots.get(field);
+    return slot == null ? -1 : slot;
+  }
+}
@@ -3,6 +3,7 @@
 public class SimpleRValue implements RValue {
 
   public Token val = null;
+  public Double doubleVal = null; // a double literal's value, parsed once
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
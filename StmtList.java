@@ -4,6 +4,7 @@ import java.util.ArrayList;
 public class StmtList implements ASTNode {
 
   public ArrayList<Stmt> stmts = new ArrayList<>();
+  public int frameSize = 0; // variable slots needed, if any (set by the resolver)
 
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
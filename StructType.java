@@ -0,0 +1,17 @@
+/**
+ * File: StructType.java
+ *
+ * A struct type, named by its declarations. The type is the same for
+ * every declaration of its name, as types are compared by name; the
+ * fields belong to each declaration (see Shape), so declaring a type
+ * again under the same name doesn't change the fields of the earlier
+ * declaration. A StructType can be referred to (by field declarations
+ * of its own type, for instance) before any declaration is checked.
+ */
+
+public class StructType extends Type {
+
+  public StructType(String name) {
+    super(name);
+  }
+}
@@ -4,190 +4,186 @@
  * Assign: 5
  * File: SymbolTable.java
  *
- * Simple SymbolTable for MyPL.
+ * Simple SymbolTable for MyPL. Each environment links to the one it
+ * was pushed from, so switching environments is a pointer swap and
+ * name lookups only visit the environments actually in scope.
  */
 
 import java.util.List;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class SymbolTable {
-  // stack of environments with name -> Object mappings
-  private List<Map<String,Object>> environments = new LinkedList<>();
-  // current environment identifier
-  private Integer currEnvId = null;
+  // an environment with name -> Object mappings, linked to the
+  // environment it was pushed from
+  public static final class Environment {
+    private final Environment parent;
+    private final int id;
+    private final Map<String,Object> names = new HashMap<>();
+
+    private Environment(Environment parent) {
+      this.parent = parent;
+      this.id = nextId.getAndIncrement();
+    }
+  }
+
+  // environment identifiers, unique across all symbol tables
+  private static final AtomicInteger nextId = new AtomicInteger();
+  // the current environment (the top of its chain of parents)
+  private Environment currEnv = null;
+
+
+  // create an empty symbol table
+  public SymbolTable() {
+  }
+
+
+  // create a symbol table that starts out in the given table's current
+  // environment. The environments themselves are shared, not copied,
+  // so names added to them in either table are visible in both.
+  public SymbolTable(SymbolTable base) {
+    currEnv = base.currEnv;
+  }
 
 
-  // add a new environment to environment stack
+  // add a new environment on top of the current environment
   public void pushEnvironment() {
-    Map<String,Object> new_environment = new HashMap<>();
-    if (environments.size() == 0)
-      environments.add(new_environment);
-    else {
-      int index = getCurrEnvIndex();
-      environments.add(index + 1, new_environment);
-    }
-    currEnvId = id(new_environment);
+    currEnv = new Environment(currEnv);
   }
 
-  // remove last added environment from environment stack
+  // remove the current environment, returning to its parent
   public void popEnvironment() {
-    if (environments.size() == 0)
-      return;
-    int index = getCurrEnvIndex();
-    environments.remove(index);
-    if (index > 0)
-      currEnvId = id(environments.get(index - 1));
-    else
-      currEnvId = null;
+    if (currEnv != null)
+      currEnv = currEnv.parent;
   }
 
 
   // get the current environment
-  public Integer getEnvironmentId() {
-    return currEnvId;
+  public Environment getEnvironment() {
+    return currEnv;
   }
 
 
-  // set the current environment to the given environment id
-  public void setEnvironmentId(Integer envId) {
-    currEnvId = envId;
+  // set the current environment to the given environment
+  public void setEnvironment(Environment env) {
+    currEnv = env;
+  }
+
+
+  // get the current environment's identifier
+  public Integer getEnvironmentId() {
+    if (currEnv == null)
+      return null;
+    return currEnv.id;
   }
 
 
   // add the given name to the current environment
   public void addName(String name) {
     // can't add if no environments exist
-    if (environments.size() == 0)
+    if (currEnv == null)
       return;
-    environments.get(getCurrEnvIndex()).put(name, null);
+    currEnv.names.put(name, null);
   }
 
 
   // set the given name to the given info object
   public void setInfo(String name, Object info) {
-    Map<String,Object> env = getEnvForName(name);
+    Environment env = getEnvironmentForName(name);
     if (env != null)
-      env.put(name, info);
+      env.names.put(name, info);
   }
 
 
   // get the info associated with the given name
   public Object getInfo(String name) {
-    Map<String,Object> env = getEnvForName(name);
-    if (env != null)
-      return env.get(name);
+    for (Environment env = currEnv; env != null; env = env.parent) {
+      Object info = env.names.get(name);
+      if (info != null || env.names.containsKey(name))
+        return info;
+    }
     return null;
   }
 
   
   // check if the name exists in the current environment or ancestor
-  // environments on the stack
+  // environments
   public boolean nameExists(String name) {
-    return getEnvForName(name) != null;
+    return getEnvironmentForName(name) != null;
   }
 
   
-  // check if the given name exists in the current environment
-  public boolean nameExistsInCurrEnv(String name) {
-    return nameExistsInEnv(name, getEnvironmentId());
+  // get the environment the given name resolves to (from the current
+  // environment), or null if it doesn't exist
+  public Environment getEnvironmentForName(String name) {
+    for (Environment env = currEnv; env != null; env = env.parent)
+      if (env.names.containsKey(name))
+        return env;
+    return null;
   }
 
   
-  // check if the given name exists in the given environment
-  public boolean nameExistsInEnv(String name, Integer environmentId) {
-    for (Map<String,Object> env : environments)
-      if (id(env) == environmentId)
-        return env.containsKey(name);
-    return false;
+  // check if the given name exists in the current environment
+  public boolean nameExistsInCurrEnv(String name) {
+    return currEnv != null && currEnv.names.containsKey(name);
   }
 
   
-  // pretty print the symbol table for testing purposes
+  // pretty print the current environment and its ancestors for
+  // testing purposes
   public String toString() {
+    List<Environment> chain = new ArrayList<>();
+    for (Environment env = currEnv; env != null; env = env.parent)
+      chain.add(0, env);
     String s = "";
     String r = "";
-    for (int i = 0; i < environments.size(); ++i) {
-      Map<String,Object> env = environments.get(i);
-      Integer eid = id(env);
-      s += r + eid + ":\n" + r + env + "\n";
+    for (Environment env : chain) {
+      s += r + env.id + ":\n" + r + env.names + "\n";
       r += " ";
     }
     return s;
   }
 
   
-  // ------------------------------
-  // helper functions
-  // ------------------------------
-
-  
-  // get the environment containing the given name starting from the
-  // current environment and moving up the stack of environments
-  private Map<String,Object> getEnvForName(String name) {
-    int index = getCurrEnvIndex();
-    for (int i = index; i >= 0; --i) {
-      if (environments.get(i).containsKey(name))
-        return environments.get(i);
-    }
-    return null;
-  }
-
-  
-  // get the index of the current environment
-  private int getCurrEnvIndex() {
-    for (int i = 0; i < environments.size(); ++i)
-      if (currEnvId == id(environments.get(i)))
-        return i;
-    return -1;
-  }
-
-
-  // get a unique identifier for a given object, which is used as the
-  // current environment identifier
-  private int id(Object obj) {
-    return System.identityHashCode(obj);
-  }
-
-
   // basic tests
   public static void main(String[] args) {
     SymbolTable t = new SymbolTable();
     t.pushEnvironment();
 
     // e1
-    Integer e1 = t.getEnvironmentId();
+    Environment e1 = t.getEnvironment();
     t.addName("x");
     t.setInfo("x", 20);
 
     // e2
     t.pushEnvironment();
-    Integer e2 = t.getEnvironmentId();
+    Environment e2 = t.getEnvironment();
     t.addName("x");
     t.setInfo("x", 30);
 
     // e1_2
-    t.setEnvironmentId(e1);
+    t.setEnvironment(e1);
     System.out.println("in e1: " + t.getInfo("x"));
     t.pushEnvironment();
-    Integer e1_2 = t.getEnvironmentId();
+    Environment e1_2 = t.getEnvironment();
     t.addName("x");
     t.setInfo("x", 25);
     System.out.println("in e1_2: " + t.getInfo("x"));
-    t.setEnvironmentId(e2);
+    t.setEnvironment(e2);
     System.out.println("in e2: " + t.getInfo("x"));
 
     System.out.println("Full table:\n" + t);
 
     // remove e1_2
-    t.setEnvironmentId(e1_2);
+    t.setEnvironment(e1_2);
     t.popEnvironment();
     System.out.println("Table after e1_2 removed:\n" + t);
     
     // remove e2
-    t.setEnvironmentId(e2);
+    t.setEnvironment(e2);
     t.popEnvironment();
     System.out.println("Table after e2 removed:\n" + t);
 
@@ -0,0 +1,115 @@
+/**
+ * File: TokenPipe.java
+ *
+ * Pipelined token source. A producer thread pulls tokens from another
+ * token source (reading and lexing the input) and hands them to the
+ * consumer (the parser) in fixed-size batches through a bounded ring
+ * buffer, so that reading, lexing and parsing overlap instead of
+ * running one after another. Lexer errors are passed through the
+ * buffer and thrown to the consumer at the point in the stream where
+ * they occurred.
+ *
+ * The pipe also records how long the producer spent lexing and how
+ * long the consumer spent waiting for tokens, which report() uses to
+ * show the overlap achieved compared to a serial lex-then-parse.
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class TokenPipe implements TokenSource {
+
+  public static final int BATCH_SIZE = 512;    // tokens per batch
+  public static final int CAPACITY = 64;       // batches in the ring buffer
+
+  // a batch of tokens, possibly ending in a lexer error
+  private static class Batch {
+    Token[] tokens = new Token[BATCH_SIZE];
+    int count = 0;
+    MyPLException error = null;
+  }
+
+  private final BlockingQueue<Batch> ring = new ArrayBlockingQueue<>(CAPACITY);
+  private final Thread producer;
+  private Batch batch = new Batch();   // batch being consumed
+  private int next = 0;                // next token in batch
+  private Token eos = null;            // set once EOS has been consumed
+
+  // timing (in nanoseconds)
+  private volatile long lexTime = 0;   // producer time spent lexing
+  private long waitTime = 0;           // consumer time spent waiting
+
+  /**
+   * Create a pipe over the given token source and start its producer
+   * thread.
+   */
+  public TokenPipe(TokenSource source) {
+    producer = new Thread(() -> produce(source), "token-producer");
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  public Token nextToken() throws MyPLException {
+    if (eos != null)
+      return eos;
+    while (next == batch.count) {
+      if (batch.error != null)
+        throw batch.error;
+      long start = System.nanoTime();
+      try {
+        batch = ring.take();
+      } catch (InterruptedException e) {
+        throw new MyPLException("Lexer", "read error", 0, 0);
+      }
+      waitTime += System.nanoTime() - start;
+      next = 0;
+    }
+    Token token = batch.tokens[next++];
+    if (token.type() == TokenType.EOS)
+      eos = token;
+    return token;
+  }
+
+  /**
+   * Returns a summary of the time spent lexing, parsing and waiting,
+   * given the total (wall clock) time the consumer took.
+   */
+  public String report(long wallTime) {
+    long lex = lexTime / 1000000;
+    long parse = (wallTime - waitTime) / 1000000;
+    long wall = wallTime / 1000000;
+    long overlap = Math.max(0, lex + parse - wall);
+    return "pipeline: lex " + lex + " ms, parse " + parse + " ms, wall " + wall
+      + " ms (serial estimate " + (lex + parse) + " ms, overlap " + overlap + " ms)";
+  }
+
+  // producer loop: fill batches until EOS or an error
+  private void produce(TokenSource source) {
+    Batch current = new Batch();
+    long busy = 0;
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        boolean done = false;
+        try {
+          while (current.count < BATCH_SIZE && !done) {
+            Token token = source.nextToken();
+            current.tokens[current.count++] = token;
+            done = token.type() == TokenType.EOS;
+          }
+        } catch (MyPLException e) {
+          current.error = e;
+          done = true;
+        }
+        busy += System.nanoTime() - start;
+        lexTime = busy;
+        ring.put(current);
+        if (done)
+          return;
+        current = new Batch();
+      }
+    } catch (InterruptedException e) {
+      // consumer has gone away
+    }
+  }
+}
@@ -0,0 +1,13 @@
+/**
+ * File: TokenSource.java
+ *
+ * Pull-based source of tokens for the parser. Each call to nextToken
+ * returns the next token in the stream, ending with (and then
+ * repeating) the EOS token.
+ */
+
+public interface TokenSource {
+
+  public Token nextToken() throws MyPLException;
+
+}
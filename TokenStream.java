@@ -0,0 +1,287 @@
+/**
+ * File: TokenStream.java
+ *
+ * Compact, random access token stream. Instead of one Token object
+ * (and one lexeme string) per token, the stream keeps parallel
+ * primitive arrays holding each token's type, the offset and length
+ * of its lexeme in the source buffer, and its line and column packed
+ * into a single long. Identifier and reserved word lexemes are
+ * interned in a symbol table, so each distinct name is a single
+ * string no matter how often it appears; all other lexemes are only
+ * created (sliced from the source) when asked for. Token objects are
+ * likewise only built on request by token(i).
+ */
+
+import java.util.Arrays;
+
+public class TokenStream {
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  private final char[] source;  // the scanned source text
+  private int size = 0;         // number of tokens (the last one is EOS)
+  private byte[] types;         // token type ordinals
+  private int[] starts;         // lexeme offsets into source
+  private int[] lengths;        // lexeme lengths
+  private long[] positions;     // packed line and column
+  private int[] symbols;        // interned lexeme index, or -1
+
+  // interned lexemes, hashed with open addressing (entries are index + 1)
+  private String[] names = new String[64];
+  private int[] nameHashes = new int[64];
+  private int nameCount = 0;
+  private int[] nameTable = new int[128];
+
+  /**
+   * Create an empty stream over the given source text.
+   */
+  public TokenStream(char[] source) {
+    this(source, source.length / 4);
+  }
+
+  /**
+   * Create an empty stream with room for about capacity tokens.
+   */
+  public TokenStream(char[] source, int capacity) {
+    this.source = source;
+    capacity = Math.max(16, capacity);
+    types = new byte[capacity];
+    starts = new int[capacity];
+    lengths = new int[capacity];
+    positions = new long[capacity];
+    symbols = new int[capacity];
+  }
+
+  /**
+   * Scans every token of the given lexer (up to and including EOS)
+   * into a new stream.
+   */
+  public static TokenStream tokenize(FastLexer lexer) throws MyPLException {
+    TokenStream stream = new TokenStream(lexer.source());
+    stream.scan(lexer);
+    return stream;
+  }
+
+  /**
+   * Appends every remaining token of the given lexer (up to and
+   * including EOS). The lexer must scan this stream's source.
+   */
+  public void scan(FastLexer lexer) throws MyPLException {
+    TokenType type;
+    do {
+      type = lexer.scan();
+      add(type, lexer.tokenStart(), lexer.tokenLength(), lexer.tokenLine(),
+          lexer.tokenColumn());
+    } while (type != TokenType.EOS);
+  }
+
+  /**
+   * Appends the tokens of another stream over the same source,
+   * shifting their lines down by lineOffset. The other stream's final
+   * EOS token is only copied if keepEOS is set.
+   */
+  public void append(TokenStream other, int lineOffset, boolean keepEOS) {
+    int count = keepEOS ? other.size : other.size - 1;
+    while (size + count > types.length)
+      grow();
+    // map the other stream's symbols onto this stream's symbols
+    int[] symbolMap = new int[other.nameCount];
+    for (int i = 0; i < other.nameCount; ++i)
+      symbolMap[i] = intern(other.names[i], other.nameHashes[i]);
+    System.arraycopy(other.types, 0, types, size, count);
+    System.arraycopy(other.starts, 0, starts, size, count);
+    System.arraycopy(other.lengths, 0, lengths, size, count);
+    long shift = (long) lineOffset << 32;
+    for (int i = 0; i < count; ++i) {
+      positions[size + i] = other.positions[i] + shift;
+      int symbol = other.symbols[i];
+      symbols[size + i] = symbol < 0 ? -1 : symbolMap[symbol];
+    }
+    size += count;
+  }
+
+  /**
+   * Appends a token whose lexeme is source[start, start + length).
+   */
+  public void add(TokenType type, int start, int length, int line, int column) {
+    if (size == types.length)
+      grow();
+    types[size] = (byte) type.ordinal();
+    starts[size] = start;
+    lengths[size] = length;
+    positions[size] = position(line, column);
+    if (type == TokenType.ID || isReserved(type))
+      symbols[size] = intern(start, length);
+    else
+      symbols[size] = -1;
+    size++;
+  }
+
+  // number of tokens in the stream
+  public int size() {
+    return size;
+  }
+
+  public char[] source() {
+    return source;
+  }
+
+  public TokenType type(int i) {
+    return TYPES[types[i]];
+  }
+
+  public int start(int i) {
+    return starts[i];
+  }
+
+  public int length(int i) {
+    return lengths[i];
+  }
+
+  public int line(int i) {
+    return line(positions[i]);
+  }
+
+  public int column(int i) {
+    return column(positions[i]);
+  }
+
+  // packed line and column of the i-th token
+  public long position(int i) {
+    return positions[i];
+  }
+
+  // interned symbol index of the i-th token, or -1 if not a name
+  public int symbol(int i) {
+    return symbols[i];
+  }
+
+  // the interned lexeme with the given symbol index
+  public String name(int symbol) {
+    return names[symbol];
+  }
+
+  // number of distinct interned lexemes
+  public int nameCount() {
+    return nameCount;
+  }
+
+  /**
+   * Returns the lexeme of the i-th token, sharing the interned string
+   * for names and slicing the source otherwise.
+   */
+  public String lexeme(int i) {
+    if (symbols[i] >= 0)
+      return names[symbols[i]];
+    return new String(source, starts[i], lengths[i]);
+  }
+
+  /**
+   * Builds a Token object for the i-th token.
+   */
+  public Token token(int i) {
+    long pos = positions[i];
+    return new Token(type(i), lexeme(i), line(pos), column(pos));
+  }
+
+  //------------------------
+  // packed positions
+  //------------------------
+
+  public static long position(int line, int column) {
+    return ((long) line << 32) | (column & 0xFFFFFFFFL);
+  }
+
+  public static int line(long position) {
+    return (int) (position >>> 32);
+  }
+
+  public static int column(long position) {
+    return (int) position;
+  }
+
+  //------------------------
+  // helper functions
+  //------------------------
+
+  private static boolean isReserved(TokenType type) {
+    return type.ordinal() >= TokenType.INT_TYPE.ordinal() && type != TokenType.ID;
+  }
+
+  // returns the symbol index for source[start, start + length)
+  private int intern(int start, int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; ++i)
+      hash = 31 * hash + source[i];
+    int mask = nameTable.length - 1;
+    int slot = mix(hash) & mask;
+    while (nameTable[slot] != 0) {
+      int symbol = nameTable[slot] - 1;
+      if (nameHashes[symbol] == hash && matches(names[symbol], start, length))
+        return symbol;
+      slot = (slot + 1) & mask;
+    }
+    return addName(new String(source, start, length), hash, slot);
+  }
+
+  // returns the symbol index for the given name (with its hash)
+  private int intern(String name, int hash) {
+    int mask = nameTable.length - 1;
+    int slot = mix(hash) & mask;
+    while (nameTable[slot] != 0) {
+      int symbol = nameTable[slot] - 1;
+      if (nameHashes[symbol] == hash && names[symbol].equals(name))
+        return symbol;
+      slot = (slot + 1) & mask;
+    }
+    return addName(name, hash, slot);
+  }
+
+  // adds a new name at the given (empty) hash table slot
+  private int addName(String name, int hash, int slot) {
+    if (nameCount == names.length) {
+      names = Arrays.copyOf(names, nameCount * 2);
+      nameHashes = Arrays.copyOf(nameHashes, nameCount * 2);
+    }
+    int symbol = nameCount++;
+    names[symbol] = name;
+    nameHashes[symbol] = hash;
+    nameTable[slot] = symbol + 1;
+    if (nameCount * 2 > nameTable.length)
+      rehash();
+    return symbol;
+  }
+
+  private boolean matches(String name, int start, int length) {
+    if (name.length() != length)
+      return false;
+    for (int i = 0; i < length; ++i)
+      if (name.charAt(i) != source[start + i])
+        return false;
+    return true;
+  }
+
+  private void rehash() {
+    nameTable = new int[nameTable.length * 2];
+    int mask = nameTable.length - 1;
+    for (int symbol = 0; symbol < nameCount; ++symbol) {
+      int slot = mix(nameHashes[symbol]) & mask;
+      while (nameTable[slot] != 0)
+        slot = (slot + 1) & mask;
+      nameTable[slot] = symbol + 1;
+    }
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private void grow() {
+    int capacity = types.length * 2;
+    types = Arrays.copyOf(types, capacity);
+    starts = Arrays.copyOf(starts, capacity);
+    lengths = Arrays.copyOf(lengths, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    symbols = Arrays.copyOf(symbols, capacity);
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * File: Type.java
+ *
+ * Canonical type descriptors used by the TypeChecker. Each primitive
+ * type is a single shared instance, and each struct type name maps to
+ * a single StructType per program, so types are compared by identity.
+ * Function signatures are FunctionTypes.
+ */
+
+public class Type {
+
+  public static final Type INT = new Type("int");
+  public static final Type DOUBLE = new Type("double");
+  public static final Type BOOL = new Type("bool");
+  public static final Type CHAR = new Type("char");
+  public static final Type STRING = new Type("string");
+  public static final Type NIL = new Type("nil");
+
+  private final String name;
+
+  protected Type(String name) {
+    this.name = name;
+  }
+
+  /**
+   * The primitive type with the given name (int, double, bool, char,
+   * string or nil), or null if it isn't one.
+   */
+  public static Type primitive(String name) {
+    switch (name) {
+    case "int": return INT;
+    case "double": return DOUBLE;
+    case "bool": return BOOL;
+    case "char": return CHAR;
+    case "string": return STRING;
+    case "nil": return NIL;
+    default: return null;
+    }
+  }
+
+  public String name() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -8,14 +8,25 @@
  * AST. Note the following conventions for representing type
  * information:
  * 
- * A variable name's type is a string (varname to string)
+ * Types are interned Type objects (see Type.java), so two types are
+ * the same exactly when they are the same object. A variable name is
+ * mapped to its Type
  *
- * A structured type name is a map of var mappings (typename to Map) where
- * each variable name is mapped to its type 
+ * A structured type name is mapped to its declaration (a TypeDeclStmt).
+ * Its fields are numbered by the declaration's Shape, and their types
+ * are those of its field declarations, so a type declared again under
+ * the same name doesn't change the fields of the earlier declaration
  *
- * A function type name is a list of parameter types (name to
- * List) where the list consists of each formal param type ending with
- * the return type of the function.
+ * A function name is mapped to its FunctionType, which holds the
+ * formal param types and the return type of the function.
+ *
+ * The types found are also stored in the AST (the type fields of
+ * expressions, rvalues, declarations, etc.) for the interpreter, and
+ * each binary operator is lowered to an Operation for its operand type.
+ *
+ * Both operands of "and" and "or", and every elif condition, are
+ * checked, even though at run time the right operand and later
+ * conditions may not be evaluated (see Interpreter).
  *
  * For more information on the general design see the lecture notes.
  */
@@ -25,49 +36,105 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TypeChecker implements Visitor {
   private boolean debug_flag = false; // set to false to remove debug comments
   // the symbol table
-  private SymbolTable symbolTable = new SymbolTable();
+  private SymbolTable symbolTable;
   // holds last inferred type
-  private String currType = null;
+  private Type currType = null;
+  // the struct types by name (shared with body checkers)
+  private Map<String,StructType> structs = new ConcurrentHashMap<>();
+  // the program's global environment (kept for checking unparsed
+  // function bodies later), the declarations of each global name in
+  // program order, and while checking such a body, the position of
+  // its function among the global declarations
+  private SymbolTable.Environment globalEnv = null;
+  private Map<String,List<Declaration>> globalDecls = new HashMap<>();
+  private int globalCount = 0;
+  private int horizon = -1;
+  // function declarations whose bodies are deferred, or null
+  private List<FunDeclStmt> deferred = null;
+  // where the checker's output goes, if not printed right away
+  private StringBuilder output = null;
+
   // sets up the initial environment for type checking
   public TypeChecker() {
+    symbolTable = new SymbolTable();
     symbolTable.pushEnvironment();
     // add return type for global scope
     symbolTable.addName("return");
-    symbolTable.setInfo("return", "int");
+    symbolTable.setInfo("return", Type.INT);
     // print function
     symbolTable.addName("print");
-    symbolTable.setInfo("print", List.of("string", "nil"));
+    symbolTable.setInfo("print", new FunctionType(List.of(Type.STRING), Type.NIL));
     // read function
     symbolTable.addName("read");
-    symbolTable.setInfo("read", List.of("string"));
+    symbolTable.setInfo("read", new FunctionType(List.of(), Type.STRING));
     // length function
     symbolTable.addName("length");
-    symbolTable.setInfo("length", List.of("string", "int"));
+    symbolTable.setInfo("length", new FunctionType(List.of(Type.STRING), Type.INT));
     // get function
     symbolTable.addName("get");
-    symbolTable.setInfo("get", List.of("int", "string", "char"));
+    symbolTable.setInfo("get", new FunctionType(List.of(Type.INT, Type.STRING), Type.CHAR));
     // concat function
     symbolTable.addName("concat");
-    symbolTable.setInfo("concat", List.of("string", "string", "string"));
+    symbolTable.setInfo("concat", new FunctionType(List.of(Type.STRING, Type.STRING), Type.STRING));
     // append function 
     symbolTable.addName("append");
-    symbolTable.setInfo("append", List.of("string", "char", "string")) ;
+    symbolTable.setInfo("append", new FunctionType(List.of(Type.STRING, Type.CHAR), Type.STRING));
     // itos function 
     symbolTable.addName("itos");
-    symbolTable.setInfo("itos", List.of("int", "string"));
+    symbolTable.setInfo("itos", new FunctionType(List.of(Type.INT), Type.STRING));
     // stoi function
     symbolTable.addName("stoi");
-    symbolTable.setInfo("stoi", List.of("string", "int"));
+    symbolTable.setInfo("stoi", new FunctionType(List.of(Type.STRING), Type.INT));
     // dtos function
     symbolTable.addName("dtos");
-    symbolTable.setInfo("dtos", List.of("double", "string"));
+    symbolTable.setInfo("dtos", new FunctionType(List.of(Type.DOUBLE), Type.STRING));
     // stod function
     symbolTable.addName("stod");
-    symbolTable.setInfo("stod", List.of("string", "double"));
+    symbolTable.setInfo("stod", new FunctionType(List.of(Type.STRING), Type.DOUBLE));
+  }
+
+  /**
+   * Creates a checker for function bodies (see checkBody) of the
+   * program checked by the given checker. The built-in and global
+   * environments are shared with it, and only read, so checkers made
+   * this way can check bodies in parallel once it is done.
+   */
+  public TypeChecker(TypeChecker program) {
+    symbolTable = new SymbolTable(program.symbolTable);
+    globalEnv = program.globalEnv;
+    globalDecls = program.globalDecls;
+    structs = program.structs;
+  }
+
+  /**
+   * Instead of checking function bodies in place, add their
+   * declarations to the given list, to be checked by checkBody().
+   */
+  public void deferBodies(List<FunDeclStmt> deferred) {
+    this.deferred = deferred;
+  }
+
+  /**
+   * Instead of printing the checker's output, append it to the given
+   * buffer (or print it again, if null). The output comes just before
+   * the error it goes with, so a caller choosing between the errors of
+   * several checkers can print only the chosen one's.
+   */
+  public void bufferOutput(StringBuilder output) {
+    this.output = output;
+  }
+
+  // prints a line of output, or buffers it (see bufferOutput)
+  private void println(String line) {
+    if (output != null)
+      output.append(line).append('\n');
+    else
+      System.out.println(line);
   }
 
   // function to print a debug string if the debug_flag is set for
@@ -85,10 +152,15 @@ public class TypeChecker implements Visitor {
   public void visit(StmtList node) throws MyPLException {
     debug("StmtList");
     symbolTable.pushEnvironment();
+    if (globalEnv == null)
+      globalEnv = symbolTable.getEnvironment();
     for (Stmt s : node.stmts){
       s.accept(this);
     }
-    symbolTable.popEnvironment();    
+    //the global environment stays for checking unparsed bodies later
+    if(symbolTable.getEnvironment() != globalEnv){
+      symbolTable.popEnvironment();
+    }
   }
 
   //Assignment Statements
@@ -96,12 +168,12 @@ public class TypeChecker implements Visitor {
     debug("AssignStmt");
     // check and infer rhs type
     node.rhs.accept(this);
-    String rhsType = currType;
+    Type rhsType = currType;
     // check and obtain lhs type
     node.lhs.accept(this);
-    String lhsType = currType;
+    Type lhsType = currType;
     // error if rhs and lhs types don't match
-    if (!rhsType.equals("nil") && !rhsType.equals(lhsType)) {
+    if (rhsType != Type.NIL && rhsType != lhsType) {
       String msg = "mismatched types in assignment";
       error(msg, node.lhs.path.get(0));
     }
@@ -122,49 +194,24 @@ public class TypeChecker implements Visitor {
   public void visit(SimpleRValue node) throws MyPLException {
     debug("SimpleRValue");
     if (node.val.type() == TokenType.INT_VAL)
-      currType = "int";
+      currType = Type.INT;
     else if (node.val.type() == TokenType.DOUBLE_VAL)
-      currType = "double";
+      currType = Type.DOUBLE;
     else if (node.val.type() == TokenType.BOOL_VAL)
-      currType = "bool";
+      currType = Type.BOOL;
     else if (node.val.type() == TokenType.CHAR_VAL)
-      currType = "char";
+      currType = Type.CHAR;
     else if (node.val.type() == TokenType.STRING_VAL)
-      currType = "string";
+      currType = Type.STRING;
     else if (node.val.type() == TokenType.NIL)
-      currType = "nil";
+      currType = Type.NIL;
   }
 
   
   public void visit(IDRValue node) throws MyPLException {
     debug("IDRValue");
-    // check the first id in the path
-    String varName = node.path.get(0).lexeme();
-    if (!symbolTable.nameExists(varName))
-      error("undefined variable '" + varName + "'", node.path.get(0));
-    // make sure it isn't function or type name
-    if (symbolTable.getInfo(varName) instanceof List)
-      error("unexpected function name in rvalue", node.path.get(0));
-    if (symbolTable.getInfo(varName) instanceof Map)
-      error("unexpected type name in rvalue", node.path.get(0));
-    // grab the type
-    currType = (String)symbolTable.getInfo(varName);
-    if (node.path.size() > 1 && !(symbolTable.getInfo(currType) instanceof Map))
-      error("invalid member access for non-structured type", node.path.get(0));
-    // check path
-    Map<String,String> idrContent = (Map<String,String>)symbolTable.getInfo(currType);
-    for(int i = 1; i < node.path.size(); i++){  //for to iterate through the entire size of node.path
-      idrContent = (Map<String, String>)symbolTable.getInfo(currType);
-      varName = node.path.get(i).lexeme();
-      //check if the key is contained, err if not
-      if(!idrContent.containsKey(varName)){
-        error("variable not yet defined '" + varName + "'", node.path.get(i));
-      }
-      currType = idrContent.get(varName);
-      if(node.path.size() > (i + 1) && !(symbolTable.getInfo(currType) instanceof Map)){
-        error("invalid member access for non-structured type", node.path.get(0));
-      }
-    }
+    checkPath(node.path, "rvalue");
+    node.type = currType;
   }
 
   //Variable Declerations
@@ -174,14 +221,15 @@ public class TypeChecker implements Visitor {
     //type can be null so check if it is
     if(node.varType != null){
       //check if the types dont match and also check nil
-      if(!currType.equals(node.varType.lexeme()) && !currType.equals("nil")){
+      Type varType = typeOf(node.varType.lexeme());
+      if(currType != varType && currType != Type.NIL){
         String msg = "primitive type mismatch";
         error(msg, node.varType);
       }
-      currType = node.varType.lexeme();
+      currType = varType;
     }
     //if nil is there, it needs to have a type becasue it cant be assumed
-    if(node.varType == null && currType.equals("nil")){
+    if(node.varType == null && currType == Type.NIL){
       String msg = "type missing in nil assignment";
       error(msg, node.varId);
     }
@@ -192,6 +240,8 @@ public class TypeChecker implements Visitor {
     }
     symbolTable.addName(node.varId.lexeme());
     symbolTable.setInfo(node.varId.lexeme(), currType);
+    declared(node.varId.lexeme());
+    node.type = currType;
   }
 
   //Return Statements
@@ -200,9 +250,9 @@ public class TypeChecker implements Visitor {
     if(node.returnExpr != null){
       node.returnExpr.accept(this);
     }else{
-      currType = "nil";
+      currType = Type.NIL;
     }
-    if(!currType.equals("nil") && !currType.equals(symbolTable.getInfo("return"))){
+    if(currType != Type.NIL && currType != symbolTable.getInfo("return")){
       String msg = "return does not match";
       error(msg, node.returnToken);
     }
@@ -236,7 +286,7 @@ public class TypeChecker implements Visitor {
     node.boolExpr.accept(this); //do this first to get first type
     symbolTable.pushEnvironment();  //loops need environments
     //if the current type isnt a bool (which it has to be) then error
-    if(!currType.equals("bool")){
+    if(currType != Type.BOOL){
       String msg = "requires boolean type";
       error(msg, getFirstToken(node.boolExpr));
     }
@@ -249,7 +299,7 @@ public class TypeChecker implements Visitor {
     debug("ForStmt");
     symbolTable.pushEnvironment();  //loop so environment
     symbolTable.addName(node.var.lexeme());
-    symbolTable.setInfo(node.var.lexeme(), "int");
+    symbolTable.setInfo(node.var.lexeme(), Type.INT);
     node.startExpr.accept(this);
     node.endExpr.accept(this);
     //while there are more statements
@@ -263,15 +313,16 @@ public class TypeChecker implements Visitor {
   public void visit(TypeDeclStmt node) throws MyPLException {
     debug("TypeDeclStmt");
     symbolTable.pushEnvironment();
-    //HashMap to store the types
-    Map<String, String> type = new HashMap<>();
     for(VarDeclStmt var : node.fields){
       var.accept(this);
-      type.put(var.varId.lexeme(), currType);
     }
     symbolTable.popEnvironment();
+    node.type = structType(node.typeId.lexeme());
+    //lay out this declaration's fields now, so body checkers only read it
+    Shape.of(node);
     symbolTable.addName(node.typeId.lexeme());
-    symbolTable.setInfo(node.typeId.lexeme(), type);
+    symbolTable.setInfo(node.typeId.lexeme(), node);
+    declared(node.typeId.lexeme());
   }
 
   //Function Decleration Statement
@@ -284,23 +335,62 @@ public class TypeChecker implements Visitor {
     }
     symbolTable.addName(fun);
     symbolTable.pushEnvironment();
-    symbolTable.setInfo("return", node.returnType.lexeme());
+    Type returnType = typeOf(node.returnType.lexeme());
+    symbolTable.setInfo("return", returnType);
     //List for the parameters and their types
-	  List<String> args = new ArrayList<>();
+	  List<Type> args = new ArrayList<>();
 	  for(int i = 0; i < node.params.size(); i++){
       if(symbolTable.nameExistsInCurrEnv(node.params.get(i).paramName.lexeme())){
         String msg = "the parameter '" + node.params.get(i).paramName.lexeme() + "' already exists";
         error(msg, node.params.get(i).paramType);
       }
-      args.add(node.params.get(i).paramType.lexeme());
+      Type paramType = typeOf(node.params.get(i).paramType.lexeme());
+      args.add(paramType);
       symbolTable.addName(node.params.get(i).paramName.lexeme());
-      symbolTable.setInfo(node.params.get(i).paramName.lexeme(), node.params.get(i).paramType.lexeme());
+      symbolTable.setInfo(node.params.get(i).paramName.lexeme(), paramType);
+    }
+    node.type = new FunctionType(args, returnType);
+    symbolTable.setInfo(fun, node.type);
+    //an unparsed body is checked by checkBody() once it is parsed
+    if(node.bodyParser == null){
+      if(deferred != null){
+        deferred.add(node);
+      }else{
+        node.stmtList.accept(this);
+      }
+    }
+    symbolTable.popEnvironment();
+	  symbolTable.setInfo(fun, node.type);
+    declared(fun);
+  }
+
+  /**
+   * Checks the body of a function whose body was left unparsed (see
+   * Parser.useLazyBodies) once it has been parsed, or was deferred
+   * (see deferBodies). The body is
+   * checked as it would have been at its declaration: in the global
+   * environment, with each global name standing for its last
+   * declaration before the function's.
+   */
+  public void checkBody(FunDeclStmt node) throws MyPLException {
+    debug("checkBody");
+    SymbolTable.Environment currEnv = symbolTable.getEnvironment();
+    int currHorizon = horizon;
+    symbolTable.setEnvironment(globalEnv);
+    horizon = declarationOf(node.funName.lexeme(), node.type).order;
+    symbolTable.pushEnvironment();
+    //the return type is local to the body, so the shared global
+    //environments are only ever read (see the copy constructor)
+    symbolTable.addName("return");
+    symbolTable.setInfo("return", node.type.returnType());
+    for(int i = 0; i < node.params.size(); i++){
+      symbolTable.addName(node.params.get(i).paramName.lexeme());
+      symbolTable.setInfo(node.params.get(i).paramName.lexeme(), node.type.paramType(i));
     }
-    args.add(node.returnType.lexeme());
-    symbolTable.setInfo(fun, args);
     node.stmtList.accept(this);
     symbolTable.popEnvironment();
-	  symbolTable.setInfo(fun, args);
+    symbolTable.setEnvironment(currEnv);
+    horizon = currHorizon;
   }
 
   //------------------------
@@ -312,102 +402,53 @@ public class TypeChecker implements Visitor {
     //what to check: if rest, first type = rest type, ops like and and or can only be used with booleans
     //if node is negated expr has to be boolean
     node.first.accept(this);
-    String lhsType = currType;
+    Type lhsType = currType;
     if(node.rest != null){
       node.rest.accept(this);
     }
-    String rhsType = currType;
+    Type rhsType = currType;
     if(node.operator != null){
-      TokenType operatorToken = node.operator.type();
-
-      //check if left and right side are different types
-      if(!lhsType.equals(rhsType) && (!lhsType.equals("nil") && !rhsType.equals("nil"))){
-        String msg = "mismatched types in expression";
-        error(msg, node.operator);
-      }
-
-      //make sure modulo only deals with ints
-      if(operatorToken == TokenType.MODULO){
-        if(!lhsType.equals("int") || !rhsType.equals("int")){
-          String msg = "invalid use of modulo";
-          error(msg, node.operator);
-        }
-      }
-
-      //if int or double, make sure the operator correct
-      if(lhsType.equals("int") || lhsType.equals("double")){
-        if(!isOp(operatorToken)){
-          String msg = "invalid operator use";
-          error(msg, node.operator);
-        }else if(rhsType.equals("nil")){
-          if(!isBoop(operatorToken)){
-            String msg = "unexpected type in expression";
-            error(msg, node.operator);
-          }
-        }
-      }
-
-      //if boolean, make sure operator is correct
-      if(lhsType.equals("bool")){
-        if(!isBop(operatorToken)){
-          String msg = "invalid type in arithmetic expression";
-          error(msg, node.operator);
-        }
-      }
-
-      //makes sure string and char dont use any operators
-      if(lhsType.equals("string") || lhsType.equals("char")){
-        if(isOp(operatorToken) || isBop(operatorToken)){
-          System.out.println("2: " + lhsType);
-          String msg = "invalid type in arithmetic expression";
-          error(msg, node.operator);
-        }
-      }
-
-      //make sure nil operators are == or !=
-      if(lhsType.equals("nil")){
-        if(operatorToken != TokenType.EQUAL || operatorToken != TokenType.NOT_EQUAL){
-          String msg = "invalid operator use";
-          error(msg, node.operator);
-        }
-      }
+      currType = checkOperator(lhsType, node.operator, rhsType);
+      node.operandType = lhsType == Type.NIL ? rhsType : lhsType;
+      node.operation = Operation.of(node.operator.type(), node.operandType);
+    }
+    node.type = currType;
+  }
 
-      //if comparison operator, set current type equal to boolean
-      if(isCop(operatorToken)){
-        currType = "bool";
+  public void visit(BinaryExpr node) throws MyPLException {
+    debug("BinaryExpr");
+    //walk the left spine iteratively (innermost lhs first) so long
+    //left associative chains don't recurse once per operator
+    BinaryExpr bottom = node;
+    while(bottom.lhs instanceof BinaryExpr){
+      bottom = (BinaryExpr)bottom.lhs;
+    }
+    bottom.lhs.accept(this);
+    Type lhsType = currType;
+    for(BinaryExpr curr = bottom; ; curr = curr.parent){
+      curr.rhs.accept(this);
+      curr.operandType = lhsType == Type.NIL ? currType : lhsType;
+      lhsType = checkOperator(lhsType, curr.operator, currType);
+      curr.type = lhsType;
+      curr.operation = Operation.of(curr.operator.type(), curr.operandType);
+      if(curr == node){
+        break;
       }
     }
+    currType = lhsType;
+  }
+
+  public void visit(UnaryExpr node) throws MyPLException {
+    debug("UnaryExpr");
+    //same as a negated expression or rvalue, the operand type passes through
+    node.operand.accept(this);
+    node.type = currType;
   }
 
   public void visit(LValue node) throws MyPLException {
     debug("LValue");
-    // check the first id in the path
-    String varName = node.path.get(0).lexeme();
-    if (!symbolTable.nameExists(varName))
-      error("undefined variable '" + varName + "'", node.path.get(0));
-    // make sure it isn't function or type name
-    if (symbolTable.getInfo(varName) instanceof List)
-      error("unexpected function name in lvalue", node.path.get(0));
-    if (symbolTable.getInfo(varName) instanceof Map)
-      error("unexpected type name in lvalue", node.path.get(0));
-    // grab the type
-    currType = (String)symbolTable.getInfo(varName);
-    if (node.path.size() > 1 && !(symbolTable.getInfo(currType) instanceof Map))
-      error("invalid member access for non-structured type", node.path.get(0));
-    // check path
-    Map<String,String> idrContent = (Map<String,String>)symbolTable.getInfo(currType);
-    for(int i = 1; i < node.path.size(); i++){  //for to iterate through the entire size of node.path
-      idrContent = (Map<String, String>)symbolTable.getInfo(currType);
-      varName = node.path.get(i).lexeme();
-      //check if the key is contained, err if not
-      if(!idrContent.containsKey(varName)){
-        error("variable not yet defined '" + varName + "'", node.path.get(i));
-      }
-      currType = idrContent.get(varName);
-      if(node.path.size() > (i + 1) && !(symbolTable.getInfo(currType) instanceof Map)){
-        error("invalid member access for non-structured type", node.path.get(0));
-      }
-    }
+    checkPath(node.path, "lvalue");
+    node.type = currType;
   }
 
   //New R Value
@@ -415,10 +456,11 @@ public class TypeChecker implements Visitor {
     debug("NewRValue");
     String newR = node.typeId.lexeme();
     //just a new r val so make sure the name doest already exist
-	  if(!symbolTable.nameExists(newR)){
+	  if(!exists(newR)){
       error(newR + " does not exist", node.typeId);
     }
-    currType = node.typeId.lexeme();
+    node.type = structType(newR);
+    currType = node.type;
   }
 
   //Call R Value
@@ -426,16 +468,16 @@ public class TypeChecker implements Visitor {
     debug("CallRValue");
     String name = node.funName.lexeme();
     //make sure the name exists
-	  if(!symbolTable.nameExists(name)){
+	  if(!exists(name)){
       error("function does not exist", node.funName);
     }
-    //List to store the arguments
-    List<String> arguments = (List<String>)symbolTable.getInfo(name);
+    //the function's parameter and return types
+    FunctionType function = (FunctionType)infoOf(name);
     //if there is a mismatch in number of arguments then error
-	  if(node.argList.size() < (arguments.size() - 1)){
+	  if(node.argList.size() < function.paramCount()){
       String msg = "not enough arguments";
       error(msg, node.funName);
-    }else if(node.argList.size() > (arguments.size() - 1)){
+    }else if(node.argList.size() > function.paramCount()){
       String msg = "too many arguments";
       error(msg, node.funName);
     }
@@ -443,11 +485,12 @@ public class TypeChecker implements Visitor {
 	  for(int i = 0; i < node.argList.size(); i++){
       node.argList.get(i).accept(this);
       //if the current type doesnt match current param and if its not nil
-      if(!currType.equals(arguments.get(i)) && !currType.equals("nil") && !currType.equals("bool")){
+      if(currType != function.paramType(i) && currType != Type.NIL && currType != Type.BOOL){
         error("wrong argument type", node.funName);
       }
     }
-    currType = arguments.get(arguments.size()-1);
+    node.type = function;
+    currType = function.returnType();
   }
 
   //Negated R Value
@@ -466,6 +509,194 @@ public class TypeChecker implements Visitor {
     throw new MyPLException("Type", msg, row, col);
   }
 
+  // the type with the given name: a primitive type or the program's
+  // struct type of that name
+  private Type typeOf(String name) {
+    Type type = Type.primitive(name);
+    return type != null ? type : structType(name);
+  }
+
+  // the program's struct type with the given name
+  private StructType structType(String name) {
+    return structs.computeIfAbsent(name, StructType::new);
+  }
+
+  // the declaration in scope of the given type if it is a struct
+  // type, otherwise null
+  private TypeDeclStmt declaredStruct(Type type) {
+    if(!(type instanceof StructType)){
+      return null;
+    }
+    Object info = infoOf(type.name());
+    return info instanceof TypeDeclStmt ? (TypeDeclStmt)info : null;
+  }
+
+  // checks a variable path (of an rvalue or lvalue), setting currType
+  // to the type of its last name
+  private void checkPath(List<Token> path, String kind) throws MyPLException {
+    // check the first id in the path
+    String varName = path.get(0).lexeme();
+    if (!exists(varName))
+      error("undefined variable '" + varName + "'", path.get(0));
+    // make sure it isn't function or type name
+    Object info = infoOf(varName);
+    if (info instanceof FunctionType)
+      error("unexpected function name in " + kind, path.get(0));
+    if (info instanceof TypeDeclStmt)
+      error("unexpected type name in " + kind, path.get(0));
+    // grab the type
+    currType = (Type)info;
+    if (path.size() > 1 && declaredStruct(currType) == null)
+      error("invalid member access for non-structured type", path.get(0));
+    // check path
+    for(int i = 1; i < path.size(); i++){  //for to iterate through the entire size of path
+      TypeDeclStmt struct = declaredStruct(currType);
+      varName = path.get(i).lexeme();
+      //check if the field exists, err if not
+      int slot = Shape.of(struct).slot(varName);
+      if(slot < 0){
+        error("variable not yet defined '" + varName + "'", path.get(i));
+      }
+      currType = struct.fields.get(slot).type;
+      if(path.size() > (i + 1) && declaredStruct(currType) == null){
+        error("invalid member access for non-structured type", path.get(0));
+      }
+    }
+  }
+
+  // a declaration of a global name: its position among the program's
+  // global declarations, and what the name stood for from there on
+  private static final class Declaration {
+    final int order;
+    final Object info;
+
+    Declaration(int order, Object info) {
+      this.order = order;
+      this.info = info;
+    }
+  }
+
+  // records the declaration of a global name (once its info is set),
+  // for checking function bodies later as of their own position
+  private void declared(String name) {
+    if(symbolTable.getEnvironment() == globalEnv){
+      Declaration decl = new Declaration(globalCount++, symbolTable.getInfo(name));
+      globalDecls.computeIfAbsent(name, k -> new ArrayList<>()).add(decl);
+    }
+  }
+
+  // the declaration of the given global name with the given info
+  private Declaration declarationOf(String name, Object info) {
+    for(Declaration decl : globalDecls.get(name)){
+      if(decl.info == info){
+        return decl;
+      }
+    }
+    return null;
+  }
+
+  // the last declaration of the given global name before the current
+  // body's function, or null if it was declared only after it
+  private Declaration visibleDeclaration(String name) {
+    List<Declaration> decls = globalDecls.get(name);
+    if(decls != null){
+      for(int i = decls.size() - 1; i >= 0; i--){
+        if(decls.get(i).order <= horizon){
+          return decls.get(i);
+        }
+      }
+    }
+    return null;
+  }
+
+  // whether the given name is a global name checked as of the current
+  // body's function (always false outside checkBody())
+  private boolean asOfHorizon(String name) {
+    return horizon >= 0 && symbolTable.getEnvironmentForName(name) == globalEnv;
+  }
+
+  // whether the given name is declared where the current body is
+  private boolean exists(String name) {
+    if(asOfHorizon(name)){
+      return visibleDeclaration(name) != null;
+    }
+    return symbolTable.nameExists(name);
+  }
+
+  // what the given name stands for where the current body is
+  private Object infoOf(String name) {
+    if(asOfHorizon(name)){
+      Declaration decl = visibleDeclaration(name);
+      return decl == null ? null : decl.info;
+    }
+    return symbolTable.getInfo(name);
+  }
+
+  // checks the operand types of a binary operator, returning the
+  // resulting type
+  private Type checkOperator(Type lhsType, Token operator, Type rhsType) throws MyPLException {
+    Type resultType = rhsType;
+    TokenType operatorToken = operator.type();
+
+    //check if left and right side are different types
+    if(lhsType != rhsType && (lhsType != Type.NIL && rhsType != Type.NIL)){
+      String msg = "mismatched types in expression";
+      error(msg, operator);
+    }
+
+    //make sure modulo only deals with ints
+    if(operatorToken == TokenType.MODULO){
+      if(lhsType != Type.INT || rhsType != Type.INT){
+        String msg = "invalid use of modulo";
+        error(msg, operator);
+      }
+    }
+
+    //if int or double, make sure the operator correct
+    if(lhsType == Type.INT || lhsType == Type.DOUBLE){
+      if(!isOp(operatorToken)){
+        String msg = "invalid operator use";
+        error(msg, operator);
+      }else if(rhsType == Type.NIL){
+        if(!isBoop(operatorToken)){
+          String msg = "unexpected type in expression";
+          error(msg, operator);
+        }
+      }
+    }
+
+    //if boolean, make sure operator is correct
+    if(lhsType == Type.BOOL){
+      if(!isBop(operatorToken)){
+        String msg = "invalid type in arithmetic expression";
+        error(msg, operator);
+      }
+    }
+
+    //makes sure string and char dont use any operators
+    if(lhsType == Type.STRING || lhsType == Type.CHAR){
+      if(isOp(operatorToken) || isBop(operatorToken)){
+        println("2: " + lhsType);
+        String msg = "invalid type in arithmetic expression";
+        error(msg, operator);
+      }
+    }
+
+    //make sure nil operators are == or !=
+    if(lhsType == Type.NIL){
+      if(operatorToken != TokenType.EQUAL || operatorToken != TokenType.NOT_EQUAL){
+        String msg = "invalid operator use";
+        error(msg, operator);
+      }
+    }
+
+    //if comparison operator, set current type equal to boolean
+    if(isCop(operatorToken)){
+      resultType = Type.BOOL;
+    }
+    return resultType;
+  }
+
   // gets first token of an expression
   private Token getFirstToken(Expr node) {
     return getFirstToken(node.first);
@@ -473,6 +704,10 @@ public class TypeChecker implements Visitor {
 
   // gets first token of an expression term
   private Token getFirstToken(ExprTerm node) {
+    while (node instanceof BinaryExpr)
+      node = ((BinaryExpr)node).lhs;
+    if (node instanceof UnaryExpr)
+      return getFirstToken(((UnaryExpr)node).operand);
     if (node instanceof SimpleTerm)
       return getFirstToken(((SimpleTerm)node).rvalue);
     else
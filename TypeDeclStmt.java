@@ -5,6 +5,8 @@ public class TypeDeclStmt implements Stmt {
 
   public Token typeId = null;
   public ArrayList<VarDeclStmt> fields = new ArrayList<>();
+  public StructType type = null; // set by the type checker
+  public Shape shape = null;      // made by the interpreter (see Shape)
   
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
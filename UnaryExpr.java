@@ -0,0 +1,12 @@
+
+public class UnaryExpr implements ExprTerm {
+
+  public Token operator = null; // not or neg
+  public ExprTerm operand = null;
+  public Type type = null; // set by the type checker
+
+  public void accept(Visitor visitor) throws MyPLException {
+    visitor.visit(this);
+  }
+
+}
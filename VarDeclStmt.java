@@ -5,6 +5,8 @@ public class VarDeclStmt implements Stmt {
   public Token varId = null;
   public Token varType = null;
   public Expr varExpr = null;
+  public Type type = null; // set by the type checker
+  public int slot = -1;    // set by the resolver
   
   public void accept(Visitor visitor) throws MyPLException {
     visitor.visit(this);
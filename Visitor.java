@@ -28,6 +28,8 @@ public interface Visitor {
   public void visit(LValue node) throws MyPLException;
   public void visit(SimpleTerm node) throws MyPLException;
   public void visit(ComplexTerm node) throws MyPLException;
+  public void visit(BinaryExpr node) throws MyPLException;
+  public void visit(UnaryExpr node) throws MyPLException;
 
   // rvalues
   public void visit(SimpleRValue node) throws MyPLException;